@@ -0,0 +1,289 @@
+// BinaryTOC.java implements a reader for the binary version of the TOC files.
+// The binary file holds the same fields as the text TOC file, but stores
+// them in fixed width integer columns (one column per comma separated field
+// position) with the text fields kept in a string table.  That allows the
+// scenes to be decoded without tokenizing and parsing every line of the
+// file.  The binary files are created from the text files with the
+// TocConverter tool, which converts a sensor's whole inventory tree, so a
+// sensor whose first binary file requested is missing is assumed to have
+// none and its cells are read from the text files without asking for the
+// binary file (see Sensor.mightHaveBinaryTOC).  A missing file is not an
+// error; any other failure to read the file is reported.
+//
+// File layout (all values are big-endian 32 bit integers):
+//    magic number (BinaryTOC.MAGIC)
+//    format version (BinaryTOC.VERSION)
+//    string table index of the grid column from the text header line
+//    string table index of the grid row from the text header line
+//    projection code
+//    has lines flag
+//    has metrics flag
+//    number of scenes (numImg)
+//    number of field columns (numColumns)
+//    column types (numColumns values of INT_COLUMN or STRING_COLUMN)
+//    number of fields for each scene (numImg values)
+//    column data, one column after the other (numColumns * numImg values).
+//        Integer columns hold the value, string columns hold the string
+//        table index of the value.
+//    number of strings in the string table
+//    for each string, the number of bytes followed by the UTF-8 bytes
+//---------------------------------------------------------------------------
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+public class BinaryTOC
+{
+    // name of the binary TOC file in a cell directory
+    public static final String FILE_NAME = "TOC.bin";
+
+    // identification of the file format
+    public static final int MAGIC = 0x47544F43; // "GTOC"
+    public static final int VERSION = 1;
+
+    // column types
+    public static final int INT_COLUMN = 0;
+    public static final int STRING_COLUMN = 1;
+
+    // size of the fixed portion of the header in integers
+    private static final int HEADER_INTS = 9;
+
+    private ByteBuffer buffer;  // buffer holding the contents of the file
+    private int numColumns;     // number of field columns
+    private int[] columnTypes;  // type of each column
+    private int fieldCountStart;// byte offset of the field counts
+    private int columnStart;    // byte offset of the column data
+    private String[] strings;   // string table
+
+    public int projCode;        // projection code
+    public boolean hasLines;    // has lines flag from the TOC header
+    public boolean hasMetrics;  // has metrics flag from the TOC header
+    public int numImg;          // number of scenes in the file
+    private int colString;      // string table index of the grid column
+    private int rowString;      // string table index of the grid row
+
+    // Constructor for the binary TOC.  Throws an IOException if the contents
+    // of the buffer are not a valid binary TOC file.
+    //-----------------------------------------------------------------------
+    BinaryTOC(ByteBuffer buffer) throws IOException
+    {
+        this.buffer = buffer;
+        try
+        {
+            if (buffer.getInt(0) != MAGIC)
+                throw new IOException("Not a binary TOC file");
+            int version = buffer.getInt(4);
+            if (version != VERSION)
+            {
+                throw new IOException("Unsupported binary TOC version "
+                                      + version);
+            }
+            colString = buffer.getInt(8);
+            rowString = buffer.getInt(12);
+            projCode = buffer.getInt(16);
+            hasLines = (buffer.getInt(20) == 1);
+            hasMetrics = (buffer.getInt(24) == 1);
+            numImg = buffer.getInt(28);
+            numColumns = buffer.getInt(32);
+            if ((numImg < 0) || (numColumns < 0))
+                throw new IOException("Corrupt binary TOC header");
+
+            columnTypes = new int[numColumns];
+            int offset = HEADER_INTS * 4;
+            for (int i = 0; i < numColumns; i++)
+            {
+                columnTypes[i] = buffer.getInt(offset);
+                offset += 4;
+            }
+            fieldCountStart = offset;
+            columnStart = fieldCountStart + numImg * 4;
+
+            // decode the string table
+            buffer.position(columnStart + numColumns * numImg * 4);
+            int numStrings = buffer.getInt();
+            strings = new String[numStrings];
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < numStrings; i++)
+            {
+                int length = buffer.getInt();
+                if (length > bytes.length)
+                    bytes = new byte[length];
+                buffer.get(bytes, 0, length);
+                strings[i] = new String(bytes, 0, length, "UTF-8");
+            }
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new IOException("Truncated binary TOC file");
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IOException("Truncated binary TOC file");
+        }
+    }
+
+    // method to load a binary TOC file from a URL.  Local files are memory
+    // mapped, otherwise the file is read with a single bulk read into a
+    // buffer.  Returns null if the file does not exist.  Throws an
+    // IOException if the file exists but cannot be read.
+    //----------------------------------------------------------------------
+    public static BinaryTOC load(URL url) throws IOException
+    {
+        ByteBuffer buffer;
+
+        if (url.getProtocol().equals("file"))
+        {
+            File file = new File(url.getPath());
+            if (!file.exists())
+                return null;
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                FileChannel channel = raf.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                     channel.size());
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+        else
+        {
+            InputStream is;
+            try
+            {
+                is = TocDiskCache.openStream(url);
+            }
+            catch (FileNotFoundException e)
+            {
+                // the binary file doesn't exist for this cell
+                return null;
+            }
+
+            try
+            {
+                // read the entire file into one buffer, growing it as needed
+                // (the size available is exact when the file comes from the
+                // TOC disk cache)
+                int length = is.available();
+                byte[] data = new byte[(length > 0) ? length : 65536];
+                int size = 0;
+                while (true)
+                {
+                    if (size == data.length)
+                    {
+                        // only grow the buffer if there is more to read
+                        int next = is.read();
+                        if (next < 0)
+                            break;
+                        byte[] temp = new byte[data.length * 2];
+                        System.arraycopy(data, 0, temp, 0, size);
+                        data = temp;
+                        data[size++] = (byte)next;
+                    }
+                    int count = is.read(data, size, data.length - size);
+                    if (count < 0)
+                        break;
+                    size += count;
+                }
+                buffer = ByteBuffer.wrap(data, 0, size);
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+
+        return new BinaryTOC(buffer);
+    }
+
+    // methods to return the grid column and row strings from the header
+    //------------------------------------------------------------------
+    public String getColumnString() { return strings[colString]; }
+    public String getRowString() { return strings[rowString]; }
+
+    // method to return a field cursor for a scene.  The cursor returned is
+    // positioned at the first field of the scene.
+    //---------------------------------------------------------------------
+    public TocFields getSceneFields(int scene)
+    {
+        return new SceneFields(scene);
+    }
+
+    // class to step through the fields of one scene
+    //----------------------------------------------
+    private class SceneFields implements TocFields
+    {
+        private int scene;      // index of the scene
+        private int numFields;  // number of fields for the scene
+        private int field;      // next field to return
+
+        SceneFields(int scene)
+        {
+            this.scene = scene;
+            numFields = buffer.getInt(fieldCountStart + scene * 4);
+            if (numFields > numColumns)
+                numFields = numColumns;
+            field = 0;
+        }
+
+        // helper method to return the type of the next field
+        private int nextType()
+        {
+            if (field >= numFields)
+                throw new NoSuchElementException();
+            return columnTypes[field];
+        }
+
+        // helper method to return the raw value of the next field
+        private int nextValue()
+        {
+            int value = buffer.getInt(columnStart
+                                      + (field * numImg + scene) * 4);
+            field++;
+            return value;
+        }
+
+        public boolean hasMoreFields()
+        {
+            return field < numFields;
+        }
+
+        public int nextInt()
+        {
+            int type = nextType();
+            int value = nextValue();
+            if (type == INT_COLUMN)
+                return value;
+            return Integer.parseInt(strings[value]);
+        }
+
+        public String nextString()
+        {
+            int type = nextType();
+            int value = nextValue();
+            if (type == INT_COLUMN)
+                return Integer.toString(value);
+            return strings[value];
+        }
+
+        public int nextHexDigit()
+        {
+            int type = nextType();
+            int value = nextValue();
+            if ((type == INT_COLUMN) && (value >= 0) && (value <= 9))
+                return value;
+            String s = (type == INT_COLUMN) ? Integer.toString(value)
+                                            : strings[value].trim();
+            return Character.digit(s.charAt(0),16);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+// BrowseDiskCache.java implements a cache of the browse image files in a
+// directory on the local disk so the images do not need to be downloaded
+// again in later sessions.  It is only enabled when the applet has been
+// granted the privileges to write to the local disk.
+//
+// The compressed image files are stored exactly as they were downloaded,
+// not the decoded pixels, so the cache stays small and reading an image
+// from it only costs the time to decode it.  Browse images never change
+// once they are published, so cached files are used without checking with
+// the server.
+//
+// The files are kept in a DiskFileStore, which limits the size of the cache
+// by deleting the least recently used files, and writes each file through a
+// uniquely named temporary file since two fetch threads may store the same
+// image.  Files read from file: URLs are never cached.
+//
+//  Note: the cache is used from the image fetch threads, so the methods
+//        that update the cache state are synchronized.
+//--------------------------------------------------------------------------
+import java.io.File;
+import java.net.URL;
+
+public class BrowseDiskCache
+{
+    private static BrowseDiskCache cache; // the cache (null if disabled)
+
+    private DiskFileStore files;// the cached files
+    private int hits;           // number of files read from the cache
+    private int misses;         // number of files downloaded
+
+    // method to enable the cache.  The cache is left disabled if the
+    // directory cannot be created.
+    //----------------------------------------------------------------
+    public static synchronized void enable(File directory, long maxBytes)
+    {
+        if (cache != null)
+            return;
+        try
+        {
+            if (!directory.isDirectory() && !directory.mkdirs())
+            {
+                System.out.println("Unable to create image cache directory "
+                                   + directory);
+                return;
+            }
+            cache = new BrowseDiskCache(directory, maxBytes);
+        }
+        catch (SecurityException e)
+        {
+            System.out.println("Exception:  "+e.getMessage());
+        }
+    }
+
+    // method to return the cache (null if it is not enabled)
+    //-------------------------------------------------------
+    public static BrowseDiskCache getCache()
+    {
+        return cache;
+    }
+
+    // private constructor for the cache
+    //----------------------------------
+    private BrowseDiskCache(File root, long maxBytes)
+    {
+        files = new DiskFileStore(root, maxBytes, null);
+    }
+
+    // method to return the contents of the cached file for an image URL, or
+    // null if the image is not cached (or the URL is never cached)
+    //----------------------------------------------------------------------
+    public byte[] read(URL url)
+    {
+        if (url.getProtocol().equals("file"))
+            return null;
+
+        // a cached copy that can't be read is downloaded again
+        byte[] data = files.read(DiskFileStore.getPath(url));
+
+        synchronized (this)
+        {
+            if (data != null)
+                hits++;
+            else
+                misses++;
+        }
+        return data;
+    }
+
+    // method to store the contents of a downloaded image file in the cache.
+    // Errors writing the cache are reported but otherwise ignored.
+    //----------------------------------------------------------------------
+    public void store(URL url, byte[] data)
+    {
+        if (url.getProtocol().equals("file"))
+            return;
+        files.store(DiskFileStore.getPath(url), data, null);
+    }
+
+    // method to delete all the files in the cache
+    //--------------------------------------------
+    public void clear()
+    {
+        files.clear();
+    }
+
+    // method to return a description of the cache contents for display
+    //------------------------------------------------------------------
+    public synchronized String getDescription()
+    {
+        return files.getDescription() + "\n"
+            + "This session: " + hits + " read from the cache, " + misses
+            + " downloaded";
+    }
+}
@@ -0,0 +1,164 @@
+// BrowseImageCache.java implements a cache of decoded browse images, so
+// scrolling back to an area, changing back to a resolution, or changing
+// back to a sensor doesn't download and decode the same images again.
+//
+// The images are keyed by the scene's sensor, entity ID, browse number and
+// the resolution of the image.  The cache is limited by the number of bytes
+// in the decoded pixels, with the least recently used images discarded
+// first.
+//
+//  Note: the cache is used from the image fetch threads, the image loader
+//        thread and the GUI thread, so all the methods are synchronized.
+//--------------------------------------------------------------------------
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class BrowseImageCache
+{
+    class CacheEntry
+    {
+        Image image;    // cached image
+        int bytes;      // size of the decoded pixels
+    }
+
+    private LinkedHashMap cache;// cached images in least recently used order
+    private long maxBytes;      // maximum number of bytes of images to cache
+    private long numBytes;      // number of bytes currently cached
+    private int hits;           // number of images found in the cache
+    private int misses;         // number of images not found in the cache
+    private int evictions;      // number of images discarded to make room
+
+    // constructor for the image cache
+    //--------------------------------
+    public BrowseImageCache(long maxBytes)
+    {
+        cache = new LinkedHashMap(64, 0.75f, true);
+        this.maxBytes = maxBytes;
+    }
+
+    // method to build the key identifying the image for a scene
+    //----------------------------------------------------------
+    static String makeKey(Metadata scene, int pixelSize)
+    {
+        return scene.getSensor().sensorName + "/" + scene.entityID + "/"
+             + scene.browseNumber + "/" + pixelSize;
+    }
+
+    // method to set the maximum number of bytes of images to cache.  Zero
+    // disables the cache.
+    //---------------------------------------------------------------------
+    public synchronized void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    // method to return the cached image for a scene at a resolution, or
+    // null if it isn't cached.  The lookup is counted in the statistics.
+    //--------------------------------------------------------------------
+    public synchronized Image get(Metadata scene, int pixelSize)
+    {
+        Image image = peek(scene, pixelSize);
+        if (image != null)
+            hits++;
+        else
+            misses++;
+        return image;
+    }
+
+    // method to return the cached image for a scene at a resolution without
+    // counting the lookup in the statistics.  Used when drawing.
+    //----------------------------------------------------------------------
+    public synchronized Image peek(Metadata scene, int pixelSize)
+    {
+        if (cache.isEmpty())
+            return null;
+        CacheEntry entry = (CacheEntry)cache.get(makeKey(scene, pixelSize));
+        if (entry == null)
+            return null;
+        return entry.image;
+    }
+
+    // method to add the image for a scene at a resolution to the cache
+    //-----------------------------------------------------------------
+    public synchronized void put(Metadata scene, int pixelSize, Image image)
+    {
+        int bytes = getSize(image);
+        if (bytes > maxBytes)
+            return;
+
+        CacheEntry entry = new CacheEntry();
+        entry.image = image;
+        entry.bytes = bytes;
+        CacheEntry old = (CacheEntry)cache.put(makeKey(scene, pixelSize),
+                                               entry);
+        if (old != null)
+            numBytes -= old.bytes;
+        numBytes += bytes;
+        trim();
+    }
+
+    // method to return the maximum number of bytes of images to cache
+    //----------------------------------------------------------------
+    public synchronized long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    // method to empty the cache
+    //--------------------------
+    public synchronized void clear()
+    {
+        cache.clear();
+        numBytes = 0;
+    }
+
+    // methods to return the statistics for the cache
+    //-----------------------------------------------
+    public synchronized int getHits() { return hits; }
+    public synchronized int getMisses() { return misses; }
+    public synchronized int getEvictions() { return evictions; }
+
+    // method to return a summary of the cache state for debug output
+    //---------------------------------------------------------------
+    public synchronized String getStatistics()
+    {
+        return "Image cache: " + cache.size() + " images, "
+            + (numBytes / 1024) + " KB, " + hits + " hits, " + misses
+            + " misses, " + evictions + " evictions";
+    }
+
+    // method to estimate the memory used by the pixels of an image
+    //-------------------------------------------------------------
+    static int getSize(Image image)
+    {
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        if ((width <= 0) || (height <= 0))
+            return 0;
+        int bitsPerPixel = 32;
+        if (image instanceof BufferedImage)
+        {
+            bitsPerPixel = ((BufferedImage)image).getColorModel()
+                                                 .getPixelSize();
+        }
+        return (int)(((long)width * height * bitsPerPixel + 7) / 8);
+    }
+
+    // helper method to discard the least recently used images until the
+    // cache is within its size limit
+    //------------------------------------------------------------------
+    private void trim()
+    {
+        Iterator entries = cache.values().iterator();
+        while ((numBytes > maxBytes) && entries.hasNext())
+        {
+            CacheEntry entry = (CacheEntry)entries.next();
+            entries.remove();
+            numBytes -= entry.bytes;
+            evictions++;
+        }
+    }
+}
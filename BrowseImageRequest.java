@@ -0,0 +1,317 @@
+// BrowseImageRequest.java implements the download and decode of one browse
+// image on one of the ImageLoader's fetch threads.  The image file is read
+// into memory over a URL connection with connect and read timeouts, so a
+// stalled request fails on its own instead of holding up the load, and is
+// then decoded with ImageIO.  When the request finishes, successfully or
+// not, it calls back to the ImageLoader with the decoded image (null if it
+// failed).
+//
+// A request can be cancelled at any time.  Cancelling disconnects the
+// connection so a download in progress stops right away, and the
+// ImageLoader ignores the result of a cancelled request.
+//
+// If the BrowseDiskCache is enabled, the image file is read from it when
+// it is there, and a downloaded file is stored in it before it is decoded.
+//
+// For a file downloaded over the network, the time to the first byte, the
+// number of bytes and whether the download failed are recorded so the
+// ImageLoader can adjust the number of requests it keeps in flight.
+//
+// The decode can be limited to a region of the image (in display pixels
+// from its upper left corner), set by the ImageLoader before the request is
+// started.  If the region leaves out at least half of the image, only that
+// part is decoded.  The encoded file is kept in the request so the
+// ImageLoader can decode another region of it later without reading it
+// again.  The image is always decoded at full size, since the browse files
+// are already made for each display resolution and the display draws them
+// one file pixel per display pixel.
+//--------------------------------------------------------------------------
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+class BrowseImageRequest implements Runnable
+{
+    // timeouts for the requests (in milliseconds)
+    static final int CONNECT_TIMEOUT = 30000;
+    static final int READ_TIMEOUT = 60000;
+
+    Metadata scene;                 // scene the image is for
+    final int pixelSize;            // resolution of the image
+    final String key;               // image cache key for the image
+    boolean prefetch;               // flag that the image is only wanted
+                                    // for the image cache
+                                    // Note: scene and prefetch are only
+                                    // changed by the ImageLoader while
+                                    // holding its request lock
+    private URL url;                // location of the image file
+    private ImageLoader loader;     // loader to notify when done
+    private volatile boolean cancelled; // flag that the request is cancelled
+    private URLConnection connection; // connection in use (null if none)
+    private boolean downloaded;     // flag that the file came over the
+                                    // network (or failed to)
+    private boolean failed;         // flag that the download failed
+    private long firstByteMillis;   // time from the start of the download
+                                    // until the first data arrived
+    private int bytes;              // number of bytes downloaded
+
+    // limits on the decode (null if not limited)
+    private Rectangle region;       // part of the image to decode
+    private byte[] sourceData;      // encoded image file, if already read
+
+    // results of a decode limited to a region (null if the whole image was
+    // decoded)
+    private Rectangle decodedRegion;// part of the image decoded
+    private Dimension fullSize;     // size of the whole image on the display
+
+    // constructor
+    //------------
+    BrowseImageRequest(ImageLoader loader, Metadata scene, int pixelSize,
+                       URL url, boolean prefetch)
+    {
+        this.loader = loader;
+        this.scene = scene;
+        this.pixelSize = pixelSize;
+        this.url = url;
+        this.prefetch = prefetch;
+        key = BrowseImageCache.makeKey(scene, pixelSize);
+    }
+
+    // method to cancel the request, stopping any download in progress
+    //----------------------------------------------------------------
+    void cancel()
+    {
+        cancelled = true;
+        URLConnection conn;
+        synchronized (this)
+        {
+            conn = connection;
+        }
+        if (conn instanceof HttpURLConnection)
+            ((HttpURLConnection)conn).disconnect();
+    }
+
+    // method to return whether the request has been cancelled
+    //--------------------------------------------------------
+    boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    // method to return the location of the image file
+    //-------------------------------------------------
+    URL getURL()
+    {
+        return url;
+    }
+
+    // method to limit the decode of the image to a region (null to decode
+    // the whole image).  Must be called before the request is started.
+    //--------------------------------------------------------------------
+    void setDecodeRegion(Rectangle region)
+    {
+        this.region = region;
+    }
+
+    // method to provide the encoded image file so it isn't read again.  Must
+    // be called before the request is started.
+    //-----------------------------------------------------------------------
+    void setSourceData(byte[] data)
+    {
+        sourceData = data;
+    }
+
+    // methods to return the results of a decode limited to a region.  They
+    // return null if the whole image was decoded.  Only valid once the
+    // request is done.
+    //---------------------------------------------------------------------
+    Rectangle getDecodedRegion() { return decodedRegion; }
+    Dimension getFullSize() { return fullSize; }
+    byte[] getSourceData() { return (decodedRegion != null) ? sourceData
+                                                            : null; }
+
+    // methods to return the measurements for the request.  Only valid once
+    // the request is done.
+    //---------------------------------------------------------------------
+    boolean wasDownloaded() { return downloaded; }
+    boolean hasFailed() { return failed; }
+    long getFirstByteMillis() { return firstByteMillis; }
+    int getBytes() { return bytes; }
+
+    // main method for the request, run on a fetch thread
+    //---------------------------------------------------
+    public void run()
+    {
+        BufferedImage image = null;
+        try
+        {
+            if (sourceData == null)
+                sourceData = download();
+            if ((sourceData != null) && !cancelled)
+            {
+                image = decode(sourceData);
+                if ((image == null) && !cancelled)
+                    System.out.println("Unable to decode image " + url);
+            }
+        }
+        catch (IOException e)
+        {
+            if (!cancelled)
+                System.out.println("Exception:  "+e.getMessage());
+        }
+        catch (IllegalArgumentException e)
+        {
+            // thrown by some of the decoders for corrupt files
+            if (!cancelled)
+                System.out.println("Exception:  "+e.getMessage());
+        }
+        finally
+        {
+            loader.requestDone(this, image);
+        }
+    }
+
+    // helper method to decode the image file, applying the decode limits.
+    // Returns null if there is no decoder for the file.
+    //--------------------------------------------------------------------
+    private BufferedImage decode(byte[] data) throws IOException
+    {
+        ImageInputStream iis = ImageIO.createImageInputStream(
+                                        new ByteArrayInputStream(data));
+        Iterator readers = ImageIO.getImageReaders(iis);
+        if (!readers.hasNext())
+        {
+            iis.close();
+            return null;
+        }
+        ImageReader reader = (ImageReader)readers.next();
+        try
+        {
+            reader.setInput(iis, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            ImageReadParam param = reader.getDefaultReadParam();
+
+            // only decode the region if it leaves out enough of the image to
+            // be worth decoding another region later
+            if (region != null)
+            {
+                Rectangle part = region.intersection(
+                                new Rectangle(0, 0, width, height));
+                boolean partial = (long)part.width * part.height * 2
+                                  <= (long)width * height;
+                if (!part.isEmpty() && partial)
+                {
+                    param.setSourceRegion(part);
+                    decodedRegion = part;
+                    fullSize = new Dimension(width, height);
+                }
+            }
+
+            return reader.read(0, param);
+        }
+        finally
+        {
+            reader.dispose();
+            iis.close();
+        }
+    }
+
+    // helper method to read the image file into memory, from the disk cache
+    // if possible.  Returns null if the request is cancelled.
+    //------------------------------------------------------------------------
+    private byte[] download() throws IOException
+    {
+        if (cancelled)
+            return null;
+
+        BrowseDiskCache diskCache = BrowseDiskCache.getCache();
+        if (diskCache != null)
+        {
+            byte[] data = diskCache.read(url);
+            if (data != null)
+                return data;
+        }
+
+        byte[] data = fetch();
+        if ((data != null) && (diskCache != null))
+            diskCache.store(url, data);
+        return data;
+    }
+
+    // helper method to download the image file over the network.  Returns
+    // null if the request is cancelled.
+    //--------------------------------------------------------------------
+    private byte[] fetch() throws IOException
+    {
+        // the download counts as failed unless it reaches the end
+        downloaded = true;
+        failed = true;
+        long startTime = System.currentTimeMillis();
+        URLConnection conn = url.openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        synchronized (this)
+        {
+            connection = conn;
+        }
+        if (cancelled)
+            return null;
+
+        InputStream is = conn.getInputStream();
+        firstByteMillis = System.currentTimeMillis() - startTime;
+        try
+        {
+            int length = conn.getContentLength();
+            byte[] data = new byte[(length > 0) ? length : 32768];
+            int size = 0;
+            while (!cancelled)
+            {
+                if (size == data.length)
+                {
+                    // only grow the buffer if there is more to read, so a
+                    // download of the content length isn't copied
+                    int next = is.read();
+                    if (next < 0)
+                        break;
+                    byte[] temp = new byte[data.length * 2];
+                    System.arraycopy(data, 0, temp, 0, size);
+                    data = temp;
+                    data[size++] = (byte)next;
+                }
+                int count = is.read(data, size, data.length - size);
+                if (count < 0)
+                    break;
+                size += count;
+            }
+            if (cancelled)
+                return null;
+            bytes = size;
+            failed = false;
+            if (size == data.length)
+                return data;
+            byte[] temp = new byte[size];
+            System.arraycopy(data, 0, temp, 0, size);
+            return temp;
+        }
+        finally
+        {
+            is.close();
+            synchronized (this)
+            {
+                connection = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+// CellIndex.java implements a bitmap of the grid cells that have inventory
+// for a sensor.  It lets the TOC for a cell with no inventory (over the
+// oceans, for example) be skipped instead of requesting a file that
+// doesn't exist.
+//
+// The bitmap is built from a gzipped list of the cell directories (relative
+// to the sensor directory) that contain a TOC file.  The list is generated
+// from the inventory tree by the CellIndexBuilder tool and stored in the
+// sensor directory as FILE_NAME.  Cells outside the navigation model bounds
+// are reported as possibly having inventory.
+//
+// The grid column and row of each listed directory are parsed from its name
+// and checked by building the directory name for the cell again, so only
+// the cells in the list are formatted.  If any directory name can't be
+// parsed that way, the bitmap is built by formatting the directory of every
+// cell in the grid instead.
+//--------------------------------------------------------------------------
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.zip.GZIPInputStream;
+
+public class CellIndex
+{
+    static final String FILE_NAME = "cells.gz";
+
+    private int minCol;         // first grid column in the bitmap
+    private int minRow;         // first grid row in the bitmap
+    private int numCols;        // number of grid columns in the bitmap
+    private int numRows;        // number of grid rows in the bitmap
+    private long[] bits;        // bit set for each cell with inventory
+    private int numCells;       // number of cells with inventory
+
+    // constructor for the cell index.  The cell directories are keys in the
+    // hashtable.
+    //----------------------------------------------------------------------
+    private CellIndex(Sensor sensor, Hashtable cellDirs)
+    {
+        NavigationModel nm = sensor.navModel;
+        minCol = Math.min(nm.getMinimumColumn(), nm.getMaximumColumn());
+        numCols = Math.max(nm.getMinimumColumn(), nm.getMaximumColumn())
+                - minCol + 1;
+        minRow = Math.min(nm.getMinimumRow(), nm.getMaximumRow());
+        numRows = Math.max(nm.getMinimumRow(), nm.getMaximumRow())
+                - minRow + 1;
+        bits = new long[(numCols * numRows + 63) / 64];
+
+        // set the bits for the cells whose directory is in the list,
+        // parsing the cell from the directory name when possible
+        boolean parsed = true;
+        Enumeration dirs = cellDirs.keys();
+        while (parsed && dirs.hasMoreElements())
+        {
+            String cellDir = (String)dirs.nextElement();
+            int[] cell = parseCell(sensor, cellDir);
+            if (cell == null)
+                parsed = false;
+            else
+                setCell(cell[0], cell[1]);
+        }
+        if (parsed)
+            return;
+
+        // otherwise check the directory of every cell in the grid
+        String prefix = sensor.getSensorDirectory() + "/";
+        bits = new long[bits.length];
+        numCells = 0;
+        for (int col = 0; col < numCols; col++)
+        {
+            for (int row = 0; row < numRows; row++)
+            {
+                String cellDir = sensor.getCellDirectory(minCol + col,
+                                                         minRow + row);
+                if (cellDir.startsWith(prefix))
+                    cellDir = cellDir.substring(prefix.length());
+                if (cellDirs.containsKey(cellDir))
+                    setCell(minCol + col, minRow + row);
+            }
+        }
+    }
+
+    // helper method to find the grid column and row of a cell directory
+    // name (relative to the sensor directory).  The column and row names
+    // are parsed with the navigation model, or as a number after a one
+    // letter prefix (i.e. p044/r034), and the result is only used if the
+    // sensor builds the same directory name for it.  Returns null if the
+    // name can't be parsed.
+    //-------------------------------------------------------------------
+    private static int[] parseCell(Sensor sensor, String cellDir)
+    {
+        int slash = cellDir.indexOf('/');
+        if ((slash < 0) || (cellDir.indexOf('/', slash + 1) >= 0))
+            return null;
+        String colName = cellDir.substring(0, slash);
+        String rowName = cellDir.substring(slash + 1);
+        if ((colName.length() < 2) || (rowName.length() < 2))
+            return null;
+        String dir = sensor.getSensorDirectory() + "/" + cellDir;
+
+        NavigationModel nm = sensor.navModel;
+        try
+        {
+            int[] cell = {nm.getColumnNumberFromString(colName),
+                          nm.getRowNumberFromString(rowName)};
+            if (sensor.getCellDirectory(cell[0], cell[1]).equals(dir))
+                return cell;
+        }
+        catch (RuntimeException e)
+        {
+            // the navigation models throw various exceptions for names
+            // they can't parse
+        }
+
+        try
+        {
+            int[] cell = {Integer.parseInt(colName.substring(1)),
+                          Integer.parseInt(rowName.substring(1))};
+            if (sensor.getCellDirectory(cell[0], cell[1]).equals(dir))
+                return cell;
+        }
+        catch (NumberFormatException e)
+        {
+            // not a prefixed number
+        }
+        return null;
+    }
+
+    // helper method to set the bit for a cell with inventory
+    //-------------------------------------------------------
+    private void setCell(int gridCol, int gridRow)
+    {
+        int col = gridCol - minCol;
+        int row = gridRow - minRow;
+        if ((col < 0) || (col >= numCols) || (row < 0) || (row >= numRows))
+            return;
+        int bit = col * numRows + row;
+        if ((bits[bit >> 6] & (1L << (bit & 63))) == 0)
+        {
+            bits[bit >> 6] |= 1L << (bit & 63);
+            numCells++;
+        }
+    }
+
+    // method to read the cell index for a sensor.  Throws an IOException if
+    // the index is not available.
+    //----------------------------------------------------------------------
+    static CellIndex load(Sensor sensor) throws IOException
+    {
+        URL url = new URL(CodeBase.getGlovisURL(),
+                          sensor.getSensorDirectory() + "/" + FILE_NAME);
+        BufferedReader data = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(TocDiskCache.openStream(url))));
+        Hashtable cellDirs = new Hashtable();
+        try
+        {
+            String line;
+            while ((line = data.readLine()) != null)
+            {
+                line = line.trim();
+                if (line.length() > 0)
+                    cellDirs.put(line, line);
+            }
+        }
+        finally
+        {
+            data.close();
+        }
+        return new CellIndex(sensor, cellDirs);
+    }
+
+    // method to return whether a cell might have inventory.  Returns false
+    // only for cells inside the grid that are known to have none.
+    //---------------------------------------------------------------------
+    boolean hasInventory(int gridCol, int gridRow)
+    {
+        int col = gridCol - minCol;
+        int row = gridRow - minRow;
+        if ((col < 0) || (col >= numCols) || (row < 0) || (row >= numRows))
+            return true;
+        int bit = col * numRows + row;
+        return (bits[bit >> 6] & (1L << (bit & 63))) != 0;
+    }
+
+    // method to return the number of cells with inventory
+    //----------------------------------------------------
+    int getCellCount()
+    {
+        return numCells;
+    }
+}
@@ -0,0 +1,100 @@
+// CellIndexBuilder.java is a command line tool that writes the cell index
+// read by the CellIndex class for each sensor directory in an inventory tree
+// (i.e. <sensor>/<col>/<row>/TOC).  The index is a gzipped list of the cell
+// directories, relative to the sensor directory, that contain a TOC file.
+// It is written to the sensor directory and should be rebuilt whenever
+// cells are added to the inventory.  It is not part of the applet.
+//
+// Usage: java CellIndexBuilder sensorDirectory...
+//---------------------------------------------------------------------------
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+public class CellIndexBuilder
+{
+    // method to write the cell index for a sensor directory.  Returns the
+    // number of cells in the index.
+    //--------------------------------------------------------------------
+    public static int build(File sensorDir) throws IOException
+    {
+        File[] cols = sensorDir.listFiles();
+        if (cols == null)
+            throw new IOException(sensorDir + " is not a directory");
+        Arrays.sort(cols);
+
+        // write to a temporary file so a reader never sees a partial index
+        File indexFile = new File(sensorDir, CellIndex.FILE_NAME);
+        File tempFile = new File(sensorDir, CellIndex.FILE_NAME + ".tmp");
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(tempFile))));
+        int numCells = 0;
+        try
+        {
+            for (int i = 0; i < cols.length; i++)
+            {
+                File[] rows = cols[i].listFiles();
+                if (rows == null)
+                    continue;
+                Arrays.sort(rows);
+
+                for (int j = 0; j < rows.length; j++)
+                {
+                    if (new File(rows[j], "TOC").exists()
+                        || new File(rows[j], BinaryTOC.FILE_NAME).exists())
+                    {
+                        out.write(cols[i].getName() + "/" + rows[j].getName());
+                        out.newLine();
+                        numCells++;
+                    }
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        indexFile.delete();
+        if (!tempFile.renameTo(indexFile))
+        {
+            tempFile.delete();
+            throw new IOException("unable to rename " + tempFile);
+        }
+        return numCells;
+    }
+
+    // main routine for the tool
+    //--------------------------
+    public static void main(String[] args)
+    {
+        if (args.length == 0)
+        {
+            System.out.println("Usage: java CellIndexBuilder "
+                               + "sensorDirectory...");
+            System.exit(1);
+        }
+
+        int failed = 0;
+        for (int i = 0; i < args.length; i++)
+        {
+            try
+            {
+                int numCells = build(new File(args[i]));
+                System.out.println(args[i] + ": " + numCells + " cells");
+            }
+            catch (IOException e)
+            {
+                System.out.println("Error indexing " + args[i] + ": "
+                                   + e.getMessage());
+                failed++;
+            }
+        }
+        if (failed > 0)
+            System.exit(1);
+    }
+}
@@ -0,0 +1,341 @@
+// DiskFileStore.java implements the storage shared by the disk caches (the
+// TocDiskCache and the BrowseDiskCache).  It keeps files in a directory
+// tree on the local disk, keyed by a relative path built from their URL,
+// and limits the total size of the files.  When the size grows past the
+// limit, the least recently used files are deleted.
+//
+// A file can have a companion file (for example, the validators the TOC
+// cache keeps for a file) stored next to it with a fixed suffix.  The
+// companion files are not counted in the size and are deleted with the
+// file they belong to.
+//
+// The size of each file is kept in memory in least recently used order, so
+// trimming the store doesn't need to list the directory tree.  The tree is
+// only listed when the store is created, with the files ordered by their
+// modification times, which are updated each time a file is read so the
+// order carries over to the next session.
+//
+// Each write goes to a temporary file with a unique name that is then
+// renamed, so a partially written file is never read and several threads
+// can store the same file at once.
+//
+//  Note: the store is used from several threads, so the methods that use
+//        the sizes are synchronized.  The files are read and written
+//        outside the lock.
+//--------------------------------------------------------------------------
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+class DiskFileStore
+{
+    // suffix of the temporary files being written
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private File root;          // directory holding the files
+    private long maxBytes;      // maximum size of the files in bytes
+    private long totalBytes;    // current size of the files in bytes
+    private String companionSuffix; // suffix of the companion files (null
+                                // if there are none)
+    private LinkedHashMap sizes;// size of each file (by path), in least
+                                // recently used order
+
+    // constructor for the store.  Records the files already in the
+    // directory.
+    //-------------------------------------------------------------
+    DiskFileStore(File root, long maxBytes, String companionSuffix)
+    {
+        this.root = root;
+        this.maxBytes = maxBytes;
+        this.companionSuffix = companionSuffix;
+
+        // record the size of the files already in the store, oldest first
+        File[] files = listFiles();
+        Arrays.sort(files, new Comparator()
+        {
+            public int compare(Object o1, Object o2)
+            {
+                long t1 = ((File)o1).lastModified();
+                long t2 = ((File)o2).lastModified();
+                return (t1 < t2) ? -1 : ((t1 == t2) ? 0 : 1);
+            }
+        });
+        sizes = new LinkedHashMap(Math.max(16, files.length * 2), 0.75f,
+                                  true);
+        totalBytes = 0;
+        int rootLength = root.getPath().length() + 1;
+        for (int i = 0; i < files.length; i++)
+        {
+            String path = files[i].getPath().substring(rootLength)
+                                  .replace(File.separatorChar, '/');
+            long size = files[i].length();
+            sizes.put(path, Long.valueOf(size));
+            totalBytes += size;
+        }
+    }
+
+    // method to return the file for a path in the store
+    //--------------------------------------------------
+    File getFile(String path)
+    {
+        return new File(root, path);
+    }
+
+    // method to return the companion file for a path in the store
+    //------------------------------------------------------------
+    File getCompanionFile(String path)
+    {
+        return new File(root, path + companionSuffix);
+    }
+
+    // method to return the contents of a stored file, or null if it isn't
+    // stored.  A file that can't be read is removed.  Reading a file marks
+    // it as recently used.
+    //--------------------------------------------------------------------
+    byte[] read(String path)
+    {
+        File file = getFile(path);
+        if (!file.exists())
+            return null;
+
+        byte[] data;
+        try
+        {
+            data = readFile(file);
+        }
+        catch (IOException e)
+        {
+            // the stored copy can't be used
+            remove(path);
+            return null;
+        }
+
+        // mark the file as recently used, in this session and the next
+        file.setLastModified(System.currentTimeMillis());
+        synchronized (this)
+        {
+            sizes.get(path);
+        }
+        return data;
+    }
+
+    // method to store a file and its companion file (null if none).  Errors
+    // writing the files are reported but otherwise ignored.  Returns false
+    // if the file could not be stored.
+    //-----------------------------------------------------------------------
+    boolean store(String path, byte[] data, byte[] companion)
+    {
+        if (data.length > maxBytes)
+            return false;
+
+        File file = getFile(path);
+        try
+        {
+            file.getParentFile().mkdirs();
+            if (!writeFile(file, data))
+                return false;
+            if (companion != null)
+                writeFile(getCompanionFile(path), companion);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Exception:  "+e.getMessage());
+            return false;
+        }
+
+        synchronized (this)
+        {
+            Long oldSize = (Long)sizes.put(path, Long.valueOf(data.length));
+            totalBytes += data.length;
+            if (oldSize != null)
+                totalBytes -= oldSize.longValue();
+            if (totalBytes > maxBytes)
+                trim();
+        }
+        return true;
+    }
+
+    // method to remove a file and its companion file from the store
+    //---------------------------------------------------------------
+    void remove(String path)
+    {
+        getFile(path).delete();
+        if (companionSuffix != null)
+            getCompanionFile(path).delete();
+        synchronized (this)
+        {
+            Long size = (Long)sizes.remove(path);
+            if (size != null)
+                totalBytes -= size.longValue();
+        }
+    }
+
+    // method to delete all the files in the store
+    //--------------------------------------------
+    synchronized void clear()
+    {
+        File[] files = listFiles();
+        for (int i = 0; i < files.length; i++)
+        {
+            files[i].delete();
+            if (companionSuffix != null)
+                new File(files[i].getPath() + companionSuffix).delete();
+        }
+        sizes.clear();
+        totalBytes = 0;
+    }
+
+    // method to return a description of the store for display
+    //---------------------------------------------------------
+    synchronized String getDescription()
+    {
+        return "Location: " + root + "\n"
+            + "Files: " + sizes.size() + "\n"
+            + "Size: " + (totalBytes + 1023) / 1024 + " KB of "
+            + maxBytes / 1024 + " KB";
+    }
+
+    // method to build the path in the store for a URL
+    //------------------------------------------------
+    static String getPath(URL url)
+    {
+        String path = url.getHost() + "/" + url.getPath();
+
+        // keep the path inside the store directory
+        StringBuffer safe = new StringBuffer(path.length());
+        for (int i = 0; i < path.length(); i++)
+        {
+            char c = path.charAt(i);
+            if (Character.isLetterOrDigit(c) || (c == '-') || (c == '_'))
+                safe.append(c);
+            else if (c == '/')
+            {
+                if ((safe.length() > 0)
+                    && (safe.charAt(safe.length() - 1) != '/'))
+                {
+                    safe.append('/');
+                }
+            }
+            else
+                safe.append('_');
+        }
+        return safe.toString();
+    }
+
+    // helper method to delete the least recently used files until the store
+    // is within 90% of its size limit
+    //----------------------------------------------------------------------
+    private synchronized void trim()
+    {
+        long target = maxBytes / 10 * 9;
+        Iterator entries = sizes.entrySet().iterator();
+        Vector oldest = new Vector();
+        long bytes = totalBytes;
+        while ((bytes > target) && entries.hasNext())
+        {
+            Map.Entry entry = (Map.Entry)entries.next();
+            oldest.addElement(entry.getKey());
+            bytes -= ((Long)entry.getValue()).longValue();
+        }
+        for (int i = 0; i < oldest.size(); i++)
+            remove((String)oldest.elementAt(i));
+    }
+
+    // helper method to write a file by writing a temporary file and renaming
+    // it.  The temporary file has a unique name since several threads may
+    // store the same file.  Returns false if the file could not be replaced.
+    //-----------------------------------------------------------------------
+    private static boolean writeFile(File file, byte[] data)
+        throws IOException
+    {
+        File temp = File.createTempFile(file.getName() + ".", TEMP_SUFFIX,
+                                        file.getParentFile());
+        try
+        {
+            OutputStream out = new FileOutputStream(temp);
+            try
+            {
+                out.write(data);
+            }
+            finally
+            {
+                out.close();
+            }
+            if (temp.renameTo(file))
+                return true;
+
+            // some platforms won't rename over an existing file
+            file.delete();
+            return temp.renameTo(file);
+        }
+        finally
+        {
+            temp.delete();
+        }
+    }
+
+    // helper method to return all the stored files (not including the
+    // companion files)
+    //----------------------------------------------------------------
+    private File[] listFiles()
+    {
+        Vector files = new Vector();
+        addFiles(root, files);
+        File[] result = new File[files.size()];
+        files.copyInto(result);
+        return result;
+    }
+
+    // helper method to add the stored files in a directory tree to a vector
+    //----------------------------------------------------------------------
+    private void addFiles(File dir, Vector files)
+    {
+        File[] list = dir.listFiles();
+        if (list == null)
+            return;
+        for (int i = 0; i < list.length; i++)
+        {
+            String name = list[i].getName();
+            if (list[i].isDirectory())
+                addFiles(list[i], files);
+            else if (!name.endsWith(TEMP_SUFFIX) && ((companionSuffix == null)
+                     || !name.endsWith(companionSuffix)))
+            {
+                files.addElement(list[i]);
+            }
+        }
+    }
+
+    // helper method to read an entire file
+    //-------------------------------------
+    private static byte[] readFile(File file) throws IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            byte[] data = new byte[(int)file.length()];
+            int size = 0;
+            while (size < data.length)
+            {
+                int count = in.read(data, size, data.length - size);
+                if (count < 0)
+                    throw new IOException("Short read of " + file);
+                size += count;
+            }
+            return data;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
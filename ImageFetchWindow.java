@@ -0,0 +1,177 @@
+// ImageFetchWindow.java implements the controller for the number of browse
+// image requests the ImageLoader keeps in flight at once (the window).  The
+// window is adjusted from measurements of the completed downloads, using
+// additive increase and multiplicative decrease (AIMD):
+//
+//  - the completed requests are grouped into rounds of one window's worth
+//    of requests.  At the end of a round, the throughput of the round
+//    (bytes per second) and the average time to the first byte of the
+//    requests in it are calculated.
+//  - if any request in the round failed, the window is halved.
+//  - if the throughput went up compared to the last round, or the time to
+//    the first byte is still close to the lowest seen (i.e. the server and
+//    network are not queuing the requests), the window grows by one.
+//  - otherwise more requests are only adding delay, so the window is
+//    halved.
+//
+// The window is kept within the configured bounds.  Rounds do not span
+// loads, since the time between loads would count against the throughput.
+//
+//  Note: the measurements are reported from the image fetch threads, so
+//        all the methods are synchronized.
+//--------------------------------------------------------------------------
+
+class ImageFetchWindow
+{
+    // minimum increase in throughput for a larger window to be worthwhile
+    private static final double MIN_GAIN = 1.05;
+
+    // amount the time to the first byte can grow over the lowest seen before
+    // the requests are considered to be queuing (in milliseconds)
+    private static final long LATENCY_SLACK = 50;
+
+    private int minWindow;          // bounds for the window
+    private int maxWindow;
+    private int window;             // current number of requests allowed
+    private long minFirstByte;      // lowest time to the first byte seen
+                                    // (milliseconds, -1 if none yet)
+    private double lastThroughput;  // throughput of the last round (bytes
+                                    // per second, 0 if none yet)
+
+    // measurements for the round in progress
+    private long roundStart;        // time the round started
+    private int roundRequests;      // number of requests completed
+    private int roundFailures;      // number of requests that failed
+    private long roundBytes;        // number of bytes downloaded
+    private long roundFirstByte;    // total of the times to the first byte
+
+    // constructor
+    //------------
+    ImageFetchWindow(int minWindow, int maxWindow)
+    {
+        minFirstByte = -1;
+        setLimits(minWindow, maxWindow);
+        window = this.minWindow;
+        startRound();
+    }
+
+    // method to set the bounds for the window
+    //----------------------------------------
+    synchronized void setLimits(int minWindow, int maxWindow)
+    {
+        if (minWindow < 1)
+            minWindow = 1;
+        if (maxWindow < minWindow)
+            maxWindow = minWindow;
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        window = Math.max(minWindow, Math.min(maxWindow, window));
+    }
+
+    // method to return the upper bound for the window
+    //------------------------------------------------
+    synchronized int getMaxWindow()
+    {
+        return maxWindow;
+    }
+
+    // method to return the current window
+    //------------------------------------
+    synchronized int getWindow()
+    {
+        return window;
+    }
+
+    // method to return the throughput measured for the last round (bytes
+    // per second)
+    //-------------------------------------------------------------------
+    synchronized double getThroughput()
+    {
+        return lastThroughput;
+    }
+
+    // method to call when a new load starts.  Discards the measurements for
+    // a partial round from the last load.
+    //----------------------------------------------------------------------
+    synchronized void startLoad()
+    {
+        startRound();
+    }
+
+    // method to report a completed download.  Cancelled requests and images
+    // that did not come over the network should not be reported.
+    //-----------------------------------------------------------------------
+    synchronized void requestDone(long firstByteMillis, long bytes,
+                                  boolean failed)
+    {
+        roundRequests++;
+        if (failed)
+            roundFailures++;
+        else
+        {
+            roundBytes += bytes;
+            roundFirstByte += firstByteMillis;
+            if ((minFirstByte < 0) || (firstByteMillis < minFirstByte))
+                minFirstByte = firstByteMillis;
+        }
+
+        if (roundRequests >= window)
+            endRound();
+    }
+
+    // helper method to adjust the window at the end of a round
+    //---------------------------------------------------------
+    private void endRound()
+    {
+        long elapsed = Math.max(1, System.currentTimeMillis() - roundStart);
+        double throughput = roundBytes * 1000.0 / elapsed;
+        int succeeded = roundRequests - roundFailures;
+
+        if (roundFailures > 0)
+            decrease();
+        else
+        {
+            long avgFirstByte = roundFirstByte / succeeded;
+            boolean queuing = avgFirstByte > 2 * minFirstByte + LATENCY_SLACK;
+            if ((lastThroughput <= 0)
+                || (throughput >= lastThroughput * MIN_GAIN) || !queuing)
+            {
+                if (window < maxWindow)
+                    window++;
+            }
+            else
+                decrease();
+        }
+
+        if (succeeded > 0)
+            lastThroughput = throughput;
+        startRound();
+    }
+
+    // helper method to halve the window
+    //----------------------------------
+    private void decrease()
+    {
+        window = Math.max(minWindow, (window + 1) / 2);
+    }
+
+    // helper method to clear the measurements for a new round
+    //--------------------------------------------------------
+    private void startRound()
+    {
+        roundStart = System.currentTimeMillis();
+        roundRequests = 0;
+        roundFailures = 0;
+        roundBytes = 0;
+        roundFirstByte = 0;
+    }
+
+    // method to return a summary of the window state for debug output
+    //----------------------------------------------------------------
+    synchronized String getStatistics()
+    {
+        return "Image fetch window: " + window + " (" + minWindow + "-"
+            + maxWindow + "), " + (int)(lastThroughput / 1024) + " KB/s, "
+            + "lowest time to first byte " + minFirstByte + " ms";
+    }
+}
@@ -1,27 +1,103 @@
 // ImageLoader - this class handles the details of loading the browse images
 //               from the server.
 //
+// The loader thread starts a BrowseImageRequest for each scene that needs
+// an image, keeping up to the number of requests allowed by an
+// ImageFetchWindow in flight on a pool of fetch threads.  The window is
+// adjusted from the throughput and latency measured for the completed
+// downloads.  The fetch threads download and decode the images and call
+// requestDone, which sets the scene's image and repaints the display.
+// Decoded images are also kept in a BrowseImageCache, which is checked
+// before a request is started.
+//
+// The scenes are not loaded in strict z-order.  Each time a request can be
+// started, the scenes still waiting are scored and the best one is loaded
+// next.  The score adds, in order of weight:
+//   - the fraction of the scene inside the visible part of the display
+//     (0 to 4)
+//   - minus the distance from the scene center to the center of the
+//     selected scene, relative to the size of the visible area (0 to 2)
+//   - minus the position of the scene in the z-order, relative to its
+//     length (0 to 1)
+// The visible area is updated by the GUI thread whenever the display is
+// scrolled, so the scores follow the user's view while a load runs.  In
+// single scene mode only the topmost scene that needs an image is loaded.
+//
+// In single scene mode, the request only decodes the part of the image
+// around the visible area when that leaves out most of a large image.  The
+// encoded file for the last partial image is kept so panning can decode
+// another region of it without reading it again.  Partial images are not
+// put in the BrowseImageCache.
+//
+// A scene keeps the image it has at another resolution until the image at
+// the new resolution replaces it, so the display can show the old image
+// scaled in the meantime.  The replaced image isn't flushed since it may
+// still be in the BrowseImageCache.
+//
+// After the images for the z-order have all arrived, the images for the
+// dates before and after the selected date in the active cell are loaded
+// into the BrowseImageCache, a couple at a time, so stepping through the
+// dates finds them there.  The loader isn't reported as busy while it
+// prefetches, and the prefetch is cancelled like any other load.  It stops
+// once the images it has loaded would fill half of the cache.
+//
+// When a load is cancelled, the requests still in flight are not cancelled
+// right away.  They are parked, which means they only put their images in
+// the BrowseImageCache.  The next load cancels the parked requests for
+// scenes it doesn't need, and adopts the others when its walk of the
+// z-order reaches their scenes, so a scroll doesn't download the images
+// for the scenes that stay on the display again.  Parked requests that the
+// walk doesn't adopt are cancelled when it finishes.
 //--------------------------------------------------------------------------
+import java.awt.Dimension;
 import java.awt.Image;
-import java.awt.MediaTracker;
+import java.awt.Point;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import javax.imageio.ImageIO;
 
 class ImageLoader implements Runnable, WorkMonitor
 {
     private ImagePane imagePane;
     private imgViewer applet;
-    private Image[] mediatrackerList; // list of images currently added to the
-                             // media tracker.  Maintained so they can be
-                             // removed.
-    private boolean[] isIDFree;     // array to track the free mediatracker IDs
-    private Metadata[] scenes;      // references to scenes currently loading
-    private final int maxImageFiles = 9; // max number of image files to
-                                    // load at once.  Used to size the 
-                                    // mediatrackerList and isIDFree arrays
+    private final int minImageFiles = 2; // default bounds for the number
+    private final int maxImageFiles = 9; // of image files to load at once
+    private final int maxPrefetchFiles = 2; // max number of image files to
+                                    // prefetch at once
+    private ImageFetchWindow fetchWindow; // number of image files to load
+                                    // at once
+    private ThreadPoolExecutor fetchPool; // threads downloading and decoding
+                                    // the images
+    private Vector activeRequests;  // requests in flight.  Also the lock for
+                                    // setting the images of the scenes and
+                                    // for the parked requests
+    private Vector parkedRequests;  // requests in flight that were started
+                                    // by a cancelled load
+    private BrowseImageCache imageCache; // recently loaded images
+    private volatile Rectangle visibleArea; // part of the display visible
+                                    // in the scroll area (null if unknown)
+    private volatile Point focus;   // center of the selected scene on the
+                                    // display (null if none)
+    private String regionSourceKey; // image cache key and encoded file for
+    private byte[] regionSourceData;// the last image decoded for a region
+                                    // (guarded by the request lock)
 
     private Thread loaderThread;    // thread for loading images
     private Object loadLock;        // mutex for exclusive access
     private boolean isLoading;      // images are loading flag
     private boolean isLoadCancelled;// cancel image loading flag
+    private volatile boolean isPrefetching; // flag that the z-order has been
+                                    // loaded and images are being prefetched
+    private long prefetchBytes;     // size of the images prefetched by the
+                                    // current load
     private boolean killThread;     // flag to indicate the thread should
                                     // be killed
     private int numImagesToLoad;    // total number of images currently loading
@@ -30,10 +106,13 @@ class ImageLoader implements Runnable, WorkMonitor
     // private copies of the parameters passed to loadImages so they can
     // be used by the loading thread
     private Metadata[] zOrder;      // snapshot of the displayed scene z-order
+    private Rectangle[] sceneBounds;// screen bounds of the zOrder scenes
+                                    // (null entries if not known)
     private int cellsToDisplay;     // number of cells currently displayed
     private int pixelSize;          // current display resolution
     private Sensor currSensor;      // reference to the current sensor
-    private int filesToLoad;        // number of image files to load at once
+    private Metadata[] prefetchScenes; // scenes to load into the image
+                                    // cache after the z-order (may be null)
 
     // create a buffer for storing a load that has been submitted by calling
     // loadImages, but not yet started on by the actual load thread.  This
@@ -43,10 +122,11 @@ class ImageLoader implements Runnable, WorkMonitor
     private class PendingLoad
     {
         Metadata[] zOrder;
+        Rectangle[] sceneBounds;
         int cellsToDisplay;
         int pixelSize;
         Sensor currSensor;
-        int filesToLoad;
+        Metadata[] prefetchScenes;
         boolean pending;
     }
     private PendingLoad pendingLoad;
@@ -58,11 +138,25 @@ class ImageLoader implements Runnable, WorkMonitor
         this.applet = applet;
         this.imagePane = imagePane;
 
-        // list of images loaded in the media tracker, and associated IDs and
-        // scene references
-        mediatrackerList = new Image[maxImageFiles];
-        isIDFree = new boolean[maxImageFiles];
-        scenes = new Metadata[maxImageFiles];
+        // the decoded images are kept in memory, so don't have ImageIO
+        // create temporary files
+        ImageIO.setUseCache(false);
+
+        activeRequests = new Vector();
+        parkedRequests = new Vector();
+        imageCache = new BrowseImageCache(48 * 1024 * 1024);
+        fetchWindow = new ImageFetchWindow(minImageFiles, maxImageFiles);
+        fetchPool = (ThreadPoolExecutor)Executors.newFixedThreadPool(
+            maxImageFiles,
+            new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "Image Fetch Thread");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
 
         // create objects for loading images in a separate thread
         loadLock = new Object();
@@ -73,95 +167,14 @@ class ImageLoader implements Runnable, WorkMonitor
 
     // methods required for the WorkMonitor interface
     //-----------------------------------------------
-    public String getWorkLabel() { return "Loading Images"; }
+    public String getWorkLabel()
+    {
+        return "Loading Images (" + fetchWindow.getWindow() + " at once)";
+    }
     public boolean isWorking() { return isBusy(); }
     public int getTotalWork() { return numImagesToLoad; }
     public int getWorkComplete() { return currImageLoading; }
 
-    // method to wait for any of the images being tracked by the media
-    // tracker to arrive.  When one arrives, the ID is freed and the 
-    // method returns.  This allows the loader thread to keep kicking off
-    // new image loads while still being somewhat responsive to the user
-    // cancelling a load.  If an extremely long time goes by without 
-    // receiving an image, some kind of error must have occurred, so 
-    // return false to indicate an error.  Normally true is returned.
-    //-------------------------------------------------------------------
-    private boolean waitForAny(MediaTracker mt)
-    {
-        boolean receivedOne = false;
-        int waitCount = 0; // count of number of times sleep has been called
-
-        if (applet.verboseOutput)
-            System.out.println("Waiting for any image");
-
-        // loop until an image is received
-        while (!receivedOne)
-        {
-            boolean waitingForOne = false;
-
-            // check if one of the images has been received
-            for (int i = 0; i < filesToLoad; i++)
-            {
-                // only check IDs that are not free
-                if (!isIDFree[i])
-                {
-                    waitingForOne = true;
-
-                    // ID is in use, so check to see if it is done
-                    if (mt.checkID(i))
-                    {
-                        // FIXME - test code to allow simulating a slow
-                        // network connection
-                        if (applet.slowdown)
-                        {
-                            try {loaderThread.sleep(500);}
-                            catch (InterruptedException e) {}
-                        }
-
-                        // it is done, so free the ID and break out of the 
-                        // loop
-                        receivedOne = true;
-                        scenes[i].image = mediatrackerList[i];
-                        mt.removeImage(mediatrackerList[i]);
-                        mediatrackerList[i] = null;
-                        isIDFree[i] = true;
-                        scenes[i] = null;
-                        break;
-                    }
-                }
-            }
-
-            // if no allocated IDs were found, issue a warning message and
-            // break out of the loop (should only happen if there is a 
-            // software bug).
-            if (!waitingForOne)
-            {
-                System.out.println("Warning - nothing to wait for");
-                break;
-            }
-
-            // if none arrived, sleep for a little while
-            if (!receivedOne)
-            {
-                try {loaderThread.sleep(20);}
-                catch (InterruptedException e) {}
-                waitCount++;
-
-                // check if we have been waiting for an image to download
-                // for an extremely long time (9000 is 3 minutes without
-                // receiving a single image - this is an extremely long
-                // time even on a slow connection)
-                if (waitCount > 9000)
-                    return false;
-            }
-        }
-
-        if (applet.verboseOutput)
-            System.out.println("received image");
-
-        return true;
-    }
-
     // method to communicate the images to load to the loading thread
     //---------------------------------------------------------------
     public void loadImages
@@ -169,37 +182,39 @@ class ImageLoader implements Runnable, WorkMonitor
         ZOrderList zOrder,      // I: zOrder list for load order of images
         int cellsToDisplay,     // I: number of cells to display
         int pixelSize,          // I: pixel resolution in meters
-        Sensor currSensor       // I: current sensor reference
+        Sensor currSensor,      // I: current sensor reference
+        Metadata[] prefetchScenes // I: scenes to load into the image cache
+                                // after the z-order, in order (may be null)
     )
     {
-        // calculate a guess at the number of files to load at once.  The 
-        // goal is to get a good balance between the time it takes to cancel
-        // a load on a slow connection and the speed of the download for a fast
-        // connection.  Assume that only 75,000 bytes should be loading at
-        // once.
-        int fileSize = currSensor.getImageFileSize(pixelSize);
-        int filesToLoad = 75000/fileSize;
-        if (filesToLoad < 2)
-            filesToLoad = 2;
-        else if (filesToLoad > maxImageFiles)
-            filesToLoad = maxImageFiles;
-
         // get a snapshot of the zOrder since the load thread will need to
         // manipulate it at the same time the GUI thread does
         Metadata[] zo = zOrder.getSnapshot();
         if (zo == null)
             return;
 
+        // also get the screen bounds of the scenes for scoring them, since
+        // the screen locations are only safe to read on this thread
+        Rectangle[] bounds = new Rectangle[zo.length];
+        for (int i = 0; i < zo.length; i++)
+        {
+            Polygon location = zo[i].screenLocation;
+            if (location != null)
+                bounds[i] = location.getBounds();
+        }
+        updateVisibleArea();
+
         // set the parameters in the pending load buffer.  Lock the buffer 
         // while loading the parameters to protect against the load thread
         // reading a half filled buffer.
         synchronized (pendingLoad)
         {
             pendingLoad.zOrder = zo;
+            pendingLoad.sceneBounds = bounds;
             pendingLoad.cellsToDisplay = cellsToDisplay;
             pendingLoad.pixelSize = pixelSize;
             pendingLoad.currSensor = currSensor;
-            pendingLoad.filesToLoad = filesToLoad;
+            pendingLoad.prefetchScenes = prefetchScenes;
             pendingLoad.pending = true;
             // if the load thread is still running, make sure it is cancelled
             if (isLoading)
@@ -222,7 +237,133 @@ class ImageLoader implements Runnable, WorkMonitor
             if (applet.verboseOutput)
                 System.out.println("cancelled");
             isLoadCancelled = true;
+
+            // wake the load thread if it is waiting for a request to finish
+            synchronized (activeRequests)
+            {
+                activeRequests.notify();
+            }
+        }
+    }
+
+    // method to update the visible part of the display and the location of
+    // the selected scene used for picking the order to load the images in.
+    // Must be called from the GUI thread.
+    //-----------------------------------------------------------------------
+    public void updateVisibleArea()
+    {
+        visibleArea = imagePane.getVisibleArea();
+
+        Point center = null;
+        MosaicData md = applet.md;
+        if (md != null)
+        {
+            Metadata scene = md.getCurrentScene();
+            if ((scene != null) && (scene.screenLocation != null))
+            {
+                Rectangle bounds = scene.screenLocation.getBounds();
+                center = new Point((int)bounds.getCenterX(),
+                                   (int)bounds.getCenterY());
+            }
         }
+        focus = center;
+    }
+
+    // method to return the cache of recently loaded images
+    //-----------------------------------------------------
+    public BrowseImageCache getImageCache()
+    {
+        return imageCache;
+    }
+
+    // method to set the bounds for the number of image files to load at
+    // once.  The fetch thread pool is sized for the upper bound.
+    //-------------------------------------------------------------------
+    public void setConcurrencyLimits(int minFiles, int maxFiles)
+    {
+        fetchWindow.setLimits(minFiles, maxFiles);
+        int poolSize = fetchWindow.getMaxWindow();
+        if (poolSize > fetchPool.getMaximumPoolSize())
+        {
+            fetchPool.setMaximumPoolSize(poolSize);
+            fetchPool.setCorePoolSize(poolSize);
+        }
+        else
+        {
+            fetchPool.setCorePoolSize(poolSize);
+            fetchPool.setMaximumPoolSize(poolSize);
+        }
+    }
+
+    // method called by the fetch threads when a request finishes.  The image
+    // is null if the request failed.
+    //-----------------------------------------------------------------------
+    void requestDone(BrowseImageRequest request, BufferedImage image)
+    {
+        // FIXME - test code to allow simulating a slow network connection
+        if (applet.slowdown && !request.isCancelled())
+        {
+            try {Thread.sleep(500);}
+            catch (InterruptedException e) {}
+        }
+
+        // the image is worth keeping even if the request was cancelled,
+        // unless it only holds part of the image
+        Rectangle region = request.getDecodedRegion();
+        if ((image != null) && (region == null))
+            imageCache.put(request.scene, request.pixelSize, image);
+
+        // let the window learn from the downloads that ran to completion
+        if (request.wasDownloaded() && !request.isCancelled())
+        {
+            fetchWindow.requestDone(request.getFirstByteMillis(),
+                                    request.getBytes(), request.hasFailed());
+        }
+
+        boolean imageSet = false;
+        synchronized (activeRequests)
+        {
+            // the scene can only be changed if the request hasn't been
+            // cancelled or parked, since the load thread no longer owns the
+            // scenes once a cancelled load finishes.  Prefetched images only
+            // go in the cache.
+            if (!request.isCancelled() && activeRequests.contains(request))
+            {
+                if (request.prefetch)
+                {
+                    if (image != null)
+                        prefetchBytes += BrowseImageCache.getSize(image);
+                }
+                else
+                {
+                    if (image != null)
+                    {
+                        request.scene.imageRes = request.pixelSize;
+                        request.scene.imageRegion = region;
+                        request.scene.imageFullSize = request.getFullSize();
+                        request.scene.image = image;
+                        imageSet = true;
+                        if (region != null)
+                        {
+                            regionSourceKey = request.key;
+                            regionSourceData = request.getSourceData();
+                        }
+                    }
+                    currImageLoading++;
+                    if (applet.verboseOutput)
+                    {
+                        System.out.println("received image "
+                                           + request.getURL());
+                    }
+                }
+            }
+            activeRequests.removeElement(request);
+            parkedRequests.removeElement(request);
+            activeRequests.notify();
+        }
+
+        if (imageSet)
+            imagePane.repaint();
     }
 
     // method to stop the load thread when the applet is going out of scope
@@ -258,7 +399,7 @@ class ImageLoader implements Runnable, WorkMonitor
     //-----------------------------------------------------------
     public boolean isBusy()
     {
-        return isLoading || pendingLoad.pending;
+        return (isLoading && !isPrefetching) || pendingLoad.pending;
     }
 
     // main method for the loading thread
@@ -267,8 +408,6 @@ class ImageLoader implements Runnable, WorkMonitor
     {
         String imgName;         // image file name
 
-        MediaTracker mt = new MediaTracker(imagePane);
-
         // loop forever, loading images as instructed
         while (true)
         {
@@ -299,10 +438,13 @@ class ImageLoader implements Runnable, WorkMonitor
                     {
                         this.zOrder = pendingLoad.zOrder;
                         pendingLoad.zOrder = null;
+                        this.sceneBounds = pendingLoad.sceneBounds;
+                        pendingLoad.sceneBounds = null;
                         this.cellsToDisplay = pendingLoad.cellsToDisplay;
                         this.pixelSize = pendingLoad.pixelSize;
                         this.currSensor = pendingLoad.currSensor;
-                        this.filesToLoad = pendingLoad.filesToLoad;
+                        this.prefetchScenes = pendingLoad.prefetchScenes;
+                        pendingLoad.prefetchScenes = null;
                         isLoading = true;
                         isLoadCancelled = false;
                         pendingLoad.pending = false;
@@ -311,6 +453,7 @@ class ImageLoader implements Runnable, WorkMonitor
                     // return from the routine if the killThread flag is set
                     if (killThread)
                     {
+                        cancelParkedRequests(null);
                         loaderThread = null;
                         return;
                     }
@@ -321,147 +464,398 @@ class ImageLoader implements Runnable, WorkMonitor
             // waitUntilDone can actually block until the load is complete)
             synchronized (loadLock)
             {
-                int scenesLoading = 0;  // count image scenes being loaded
-                int zIndex = 0;         // start loading scenes at the top
-                                        // of the z-order
-
-                // initialize all IDs as free
-                for (int i = 0; i < filesToLoad; i++)
-                    isIDFree[i] = true;
-
                 // set up the progress monitoring variables
                 currImageLoading = 0;
+                fetchWindow.startLoad();
+
+                // cancel the parked requests this load doesn't need
+                Hashtable prefetchWanted = new Hashtable();
+                for (int i = 0; (prefetchScenes != null)
+                                && (i < prefetchScenes.length); i++)
+                {
+                    String key = BrowseImageCache.makeKey(prefetchScenes[i],
+                                                          pixelSize);
+                    prefetchWanted.put(key, key);
+                }
+                Hashtable wanted = (Hashtable)prefetchWanted.clone();
+                for (int i = 0; i < zOrder.length; i++)
+                {
+                    if (zOrder[i].visible)
+                    {
+                        String key = BrowseImageCache.makeKey(zOrder[i],
+                                                              pixelSize);
+                        wanted.put(key, key);
+                    }
+                }
+                cancelParkedRequests(wanted);
                 numImagesToLoad = 0;
                 for (int i = 0; i < zOrder.length; i++)
                 {
-                    // count scenes that aren't loaded or have the wrong pixel
-                    // size loaded 
-                    Metadata scene = zOrder[i];
-                    if ((scene.image == null) || (scene.imageRes != pixelSize))
+                    // count scenes that aren't loaded, have the wrong pixel
+                    // size loaded or only have part of the image needed
+                    if (needsImage(zOrder[i]))
                         numImagesToLoad++;
                 }
 
-                // loop through the scenes in the z-order, loading each of them
-                boolean firstTime = true;
-                while (zIndex < zOrder.length)
+                // make a list of the scenes that need to be loaded (the
+                // indexes in the z-order), skipping the scenes that are not
+                // visible or already have the image they need loaded.  Only
+                // the topmost one is loaded in single scene mode.
+                Vector waiting = new Vector();
+                for (int i = 0; i < zOrder.length; i++)
                 {
-                    Metadata scene = zOrder[zIndex];
-                    zIndex++;
-                    Image img;  // temporary image pointer
+                    Metadata scene = zOrder[i];
+                    if (!scene.visible || !needsImage(scene))
+                        continue;
+                    waiting.addElement(Integer.valueOf(i));
+                    if (cellsToDisplay == Sensor.SINGLE_SCENE)
+                        break;
+                }
 
+                // load the waiting scenes, best score first
+                while (waiting.size() > 0)
+                {
                     // exit the loop if loading has been cancelled
                     if (isLoadCancelled)
                         break;
 
-                    // do not load a scene if it is not visible
-                    if (!scene.visible)
-                        continue;
-
-                    // do not load scene if the correct resolution is already
-                    // loaded
-                    if ((scene.image != null) && (scene.imageRes == pixelSize))
-                        continue;
-
-                    // get a free media tracker id
-                    int id;
-                    for (id = 0; id < filesToLoad; id++)
+                    int index = takeBestScene(waiting);
+                    Metadata scene = zOrder[index];
+
+                    // if the image isn't cached and a request for it
+                    // isn't already in flight, wait for room for another
+                    // request
+                    Image cachedImage = imageCache.get(scene, pixelSize);
+                    boolean adopted = (cachedImage == null)
+                                      && adoptRequest(scene, false);
+                    if ((cachedImage == null) && !adopted
+                        && !waitForRequests(fetchWindow.getWindow() - 1, true))
                     {
-                        if (isIDFree[id])
-                        {
-                            isIDFree[id] = false;
-                            break;
-                        }
+                        break;
                     }
 
-                    // get the image name for the current scene
-                    imgName = currSensor.makeImageName(scene,pixelSize);
-
-                    // flush the scene currently referenced for the
-                    // scene to work around a Netscape bug that results in
-                    // image resources not being released automatically as 
-                    // part of garbage collection
-                    img = scene.image;
-                    if (img != null)
+                    // use the cached image or start the image loading.  Any
+                    // image the scene has at another resolution is left in
+                    // place so it can be drawn until the new one arrives.
+                    if (cachedImage != null)
                     {
-                        img.flush();
-                        scene.image = null;
-                    }
-                    if (applet.verboseOutput)
-                        System.out.println("Loading image " + imgName);
-                    // start the image loading
-                    img = applet.getImage(CodeBase.getGlovisURL(),imgName);
-
-                    // save the scene and the resolution
-                    scenes[id] = scene;
-                    scene.imageRes = pixelSize;
-
-                    // add the image to the tracker
-                    mt.addImage(img,id);
-                    mediatrackerList[id] = img;
-                    // start the load for this image
-                    mt.checkID(id,true);
-                    scenesLoading++;
-
-                    // if the size of the media tracker list is reached,
-                    // load the contents of the list
-                    if (scenesLoading >= filesToLoad)
-                    {
-                        if (waitForAny(mt))
+                        synchronized (activeRequests)
                         {
-                            scenesLoading--;
+                            scene.imageRes = pixelSize;
+                            scene.imageRegion = null;
+                            scene.imageFullSize = null;
+                            scene.image = cachedImage;
                             currImageLoading++;
                         }
-                        else
-                        {
-                            // an error happened while waiting for an image,
-                            // so break out of the loop
-                            scenesLoading = 0;
-                            System.out.println("Error loading images.  Image"
-                                               +" load cancelled.");
-                            break;
-                        }
+                        imagePane.repaint();
                     }
-
-                    // only load the topmost scene when in single scene mode
-                    if (firstTime)
+                    else if (!adopted)
                     {
-                        if (cellsToDisplay == Sensor.SINGLE_SCENE)
-                            break;
-                        firstTime = false;
+                        // get the image name for the current scene
+                        imgName = currSensor.makeImageName(scene,pixelSize);
+                        if (applet.verboseOutput)
+                            System.out.println("Loading image " + imgName);
+                        startRequest(scene, imgName, false,
+                                     getDecodeRegion());
                     }
                 }
 
                 // clear reference to the z-order snapshot to allow 
                 // garbage collection on the referenced scenes if needed
                 zOrder = null;
+                sceneBounds = null;
+
+                // the walk has adopted the parked requests it needs, so
+                // only the ones for the scenes to prefetch are still wanted
+                if (!isLoadCancelled)
+                    cancelParkedRequests(prefetchWanted);
+
+                // wait for all the scenes to show up, then prefetch the
+                // images for the neighboring dates.  Repaint when the
+                // prefetch starts so the display notices the load is done.
+                // Parked requests left for the prefetch don't hold up the
+                // load.
+                boolean completed = waitForRequests(0, false);
+                if (completed && (prefetchScenes != null))
+                {
+                    isPrefetching = true;
+                    imagePane.repaint();
+                    applet.md.foregroundLoadDone();
+                    completed = prefetchImages();
+                }
+                prefetchScenes = null;
 
-                // wait for all the scenes to show up
-                while (scenesLoading > 0)
+                // park the requests still in flight if the load is
+                // cancelled so the next load can keep the ones it needs
+                if (!completed)
                 {
-                    if (waitForAny(mt))
-                    {
-                        scenesLoading--;
-                        currImageLoading++;
-                    }
-                    else
+                    if (applet.verboseOutput)
+                        System.out.println("Detected cancel");
+                    synchronized (activeRequests)
                     {
-                        scenesLoading = 0;
-                        System.out.println("Error loading images.  Image"
-                                           +" load cancelled.");
+                        for (int i = 0; i < activeRequests.size(); i++)
+                        {
+                            parkedRequests.addElement(
+                                    activeRequests.elementAt(i));
+                        }
+                        activeRequests.removeAllElements();
                     }
                 }
+                else
+                    cancelParkedRequests(null);
 
-                if (isLoadCancelled)
+                if (applet.verboseOutput)
                 {
-                    if (applet.verboseOutput)
-                        System.out.println("Detected cancel");
+                    System.out.println(imageCache.getStatistics());
+                    System.out.println(fetchWindow.getStatistics());
                 }
 
                 // clear the loading flag and send an event to notify the 
                 // load is complete
                 isLoading = false;
+                isPrefetching = false;
                 imagePane.repaint();
+                applet.md.foregroundLoadDone();
+            }
+        }
+    }
+
+    // helper method for the load thread to remove the waiting scene with
+    // the best score from the list of waiting z-order indexes and return
+    // its index
+    //---------------------------------------------------------------------
+    private int takeBestScene(Vector waiting)
+    {
+        Rectangle area = visibleArea;
+        Point center = focus;
+        double diagonal = 1.0;
+        if (area != null)
+        {
+            diagonal = Math.max(1.0, Math.sqrt((double)area.width * area.width
+                                        + (double)area.height * area.height));
+        }
+
+        int best = 0;
+        double bestScore = 0;
+        for (int i = 0; i < waiting.size(); i++)
+        {
+            int index = ((Integer)waiting.elementAt(i)).intValue();
+            double score = -(double)index / zOrder.length;
+
+            Rectangle bounds = sceneBounds[index];
+            if ((bounds != null) && !bounds.isEmpty())
+            {
+                if (area != null)
+                {
+                    Rectangle visible = bounds.intersection(area);
+                    if (!visible.isEmpty())
+                    {
+                        score += 4.0 * visible.width * visible.height
+                               / ((double)bounds.width * bounds.height);
+                    }
+                }
+                if (center != null)
+                {
+                    double dx = bounds.getCenterX() - center.x;
+                    double dy = bounds.getCenterY() - center.y;
+                    double distance = Math.sqrt(dx * dx + dy * dy);
+                    score -= 2.0 * Math.min(1.0, distance / diagonal);
+                }
+            }
+
+            if ((i == 0) || (score > bestScore))
+            {
+                best = i;
+                bestScore = score;
+            }
+        }
+
+        int index = ((Integer)waiting.elementAt(best)).intValue();
+        waiting.removeElementAt(best);
+        return index;
+    }
+
+    // helper method for the load thread to determine whether a scene needs
+    // its image loaded.  A scene that only has part of its image needs it
+    // loaded again unless the part covers the visible area in single scene
+    // mode.
+    //---------------------------------------------------------------------
+    private boolean needsImage(Metadata scene)
+    {
+        if ((scene.image == null) || (scene.imageRes != pixelSize))
+            return true;
+        if (scene.imageRegion == null)
+            return false;
+        return (cellsToDisplay != Sensor.SINGLE_SCENE)
+               || !isRegionCovered(scene, visibleArea);
+    }
+
+    // method to determine whether the part of a scene's image that is
+    // loaded covers an area of the display.  Always true if the scene has
+    // its whole image.  Assumes the image is drawn at the upper left of the
+    // display, as it is in single scene mode.
+    //---------------------------------------------------------------------
+    static boolean isRegionCovered(Metadata scene, Rectangle area)
+    {
+        Rectangle region = scene.imageRegion;
+        Dimension fullSize = scene.imageFullSize;
+        if ((region == null) || (fullSize == null) || (area == null))
+            return true;
+        Rectangle needed = area.intersection(new Rectangle(fullSize));
+        return needed.isEmpty() || region.contains(needed);
+    }
+
+    // helper method for the load thread to return the region of the image
+    // to decode.  In single scene mode it is the visible area with half of
+    // its size added around it, so small pans don't need another decode.
+    // Returns null if the whole image should be decoded.
+    //---------------------------------------------------------------------
+    private Rectangle getDecodeRegion()
+    {
+        Rectangle area = visibleArea;
+        if ((cellsToDisplay != Sensor.SINGLE_SCENE) || (area == null)
+            || area.isEmpty())
+        {
+            return null;
+        }
+        Rectangle region = new Rectangle(area);
+        region.grow(area.width / 2, area.height / 2);
+        return region;
+    }
+
+    // helper method for the load thread to prefetch the images for the
+    // prefetch scenes into the image cache.  Returns false if the load is
+    // cancelled.
+    //--------------------------------------------------------------------
+    private boolean prefetchImages()
+    {
+        long maxBytes = imageCache.getMaxBytes() / 2;
+        synchronized (activeRequests)
+        {
+            prefetchBytes = 0;
+        }
+        for (int i = 0; i < prefetchScenes.length; i++)
+        {
+            Metadata scene = prefetchScenes[i];
+            if (((scene.image != null) && (scene.imageRes == pixelSize))
+                || (imageCache.peek(scene, pixelSize) != null)
+                || adoptRequest(scene, true))
+            {
+                continue;
+            }
+
+            if (!waitForRequests(maxPrefetchFiles - 1, true))
+                return false;
+            synchronized (activeRequests)
+            {
+                if (prefetchBytes >= maxBytes)
+                    break;
+            }
+
+            String imgName = currSensor.makeImageName(scene, pixelSize);
+            if (applet.verboseOutput)
+                System.out.println("Prefetching image " + imgName);
+            startRequest(scene, imgName, true, null);
+        }
+        return waitForRequests(0, true);
+    }
+
+    // helper method for the load thread to take over the parked request
+    // for a scene's image.  Returns false if there isn't one.
+    //---------------------------------------------------------------------
+    private boolean adoptRequest(Metadata scene, boolean prefetch)
+    {
+        String key = BrowseImageCache.makeKey(scene, pixelSize);
+        synchronized (activeRequests)
+        {
+            for (int i = 0; i < parkedRequests.size(); i++)
+            {
+                BrowseImageRequest request
+                    = (BrowseImageRequest)parkedRequests.elementAt(i);
+                if (request.key.equals(key))
+                {
+                    parkedRequests.removeElementAt(i);
+                    request.scene = scene;
+                    request.prefetch = prefetch;
+                    activeRequests.addElement(request);
+                    if (applet.verboseOutput)
+                        System.out.println("Kept image " + request.getURL());
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // helper method to cancel the parked requests, except for the ones with
+    // a key in the table passed in (all of them if it is null)
+    //-----------------------------------------------------------------------
+    private void cancelParkedRequests(Hashtable keep)
+    {
+        synchronized (activeRequests)
+        {
+            for (int i = parkedRequests.size() - 1; i >= 0; i--)
+            {
+                BrowseImageRequest request
+                    = (BrowseImageRequest)parkedRequests.elementAt(i);
+                if ((keep == null) || !keep.containsKey(request.key))
+                {
+                    request.cancel();
+                    parkedRequests.removeElementAt(i);
+                }
+            }
+            activeRequests.notify();
+        }
+    }
+
+    // helper method for the load thread to start the request for a scene's
+    // image.  The region limits the decode and can be null.
+    //---------------------------------------------------------------------
+    private void startRequest(Metadata scene, String imgName,
+                              boolean prefetch, Rectangle region)
+    {
+        try
+        {
+            BrowseImageRequest request = new BrowseImageRequest(this, scene,
+                    pixelSize, new URL(CodeBase.getGlovisURL(), imgName),
+                    prefetch);
+            request.setDecodeRegion(region);
+            synchronized (activeRequests)
+            {
+                // decode another region of the last partial image from the
+                // file already read
+                if (request.key.equals(regionSourceKey))
+                    request.setSourceData(regionSourceData);
+            }
+            activeRequests.addElement(request);
+            fetchPool.execute(request);
+        }
+        catch (MalformedURLException e)
+        {
+            System.out.println("Exception:  "+e.getMessage());
+        }
+    }
+
+    // helper method for the load thread to wait until no more than the
+    // indicated number of requests are in flight, optionally counting the
+    // parked ones.  Returns false if the load is cancelled while waiting.
+    //-----------------------------------------------------------------------
+    private boolean waitForRequests(int maxActive, boolean countParked)
+    {
+        synchronized (activeRequests)
+        {
+            while (!isLoadCancelled
+                   && (activeRequests.size()
+                       + (countParked ? parkedRequests.size() : 0)
+                       > maxActive))
+            {
+                try
+                {
+                    activeRequests.wait();
+                }
+                catch (InterruptedException e) {}
             }
         }
+        return !isLoadCancelled;
     }
 }
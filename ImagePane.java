@@ -45,6 +45,21 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
     private Image downloadIcon; // download icon shown in upper left of display
     private int osbHeight = -1;    // height of off screen buffer
     private int osbWidth = -1;     // width of off screen buffer
+    private Image mosaicBuffer = null; // retained drawing of the scenes in
+                                   // the mosaic (same size as the off
+                                   // screen buffer)
+    private MosaicState mosaicState = new MosaicState(); // state the
+                                   // mosaic buffer was drawn for
+    private MosaicState nextMosaicState = new MosaicState(); // state
+                                   // collected for the next paint
+    private boolean mosaicValid = false; // flag that the mosaic buffer
+                                   // holds a drawing for mosaicState
+    private Metadata[] stateScenes; // z-order snapshot reused when
+                                   // collecting the mosaic state
+    private Point stateCorner = new Point(); // upper left corner reused
+                                   // when collecting the mosaic state
+    private boolean mosaicReduced; // flag that the mosaic buffer was drawn
+                                   // at reduced quality
     private Dimension preferredSize; // preferred size of the ImagePane.  It
                                      // is set to the size needed to fit 
                                      // the displayed data in
@@ -88,6 +103,7 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
 
     private Timer refreshTimer; // timer for refreshing the display while
                                 // data is loading
+    RenderQuality renderQuality; // quality to draw the display at
     private Color swathHighlightColor = new Color(174,255,51); // make the 
                               // swath highlight a lime green
 
@@ -159,6 +175,7 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
 
         // create the refresh timer to run every second
         refreshTimer = new Timer(1000, this);
+        renderQuality = new RenderQuality(this, 50);
 
         // set the size of the canvas so that it gets repaint messages.  This
         // is done to allow the applet to start up properly while the images
@@ -323,6 +340,7 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
         }
 
         modeChanged = false;
+        mosaicValid = false;
 
         if (arg == MosaicData.DISPLAY_MODE_CHANGED)
             modeChanged = true;
@@ -545,6 +563,7 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
         int cellsToDisplay = currSensor.getNumCellsAtResolution(pixSize);
         double actualPixSize = md.actualPixelSize;
         ZOrderList zOrder = md.getZOrder();
+        BrowseImageCache imageCache = md.imageLoader.getImageCache();
 
         // set the color for the coverage map polygons
         Color coverageMapColor = new Color(204,255,255);
@@ -640,8 +659,32 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
                 }
             }
 
-            // draw the image if it is available
+            // draw the image if it is available, either from the scene or
+            // from the image cache when the loader hasn't reached the scene.
+            // If neither has the image at the current resolution, the image
+            // the scene has at another resolution is scaled to fill in until
+            // the new one is loaded.
+            // An image holding only part of the scene is offset by the
+            // position of its part.
+            Image image = null;
+            int imageRes = pixSize;
+            Rectangle region = null;
             if ((scene.image != null) && (scene.imageRes == pixSize))
+            {
+                image = scene.image;
+                region = scene.imageRegion;
+            }
+            else if (scene.visible)
+            {
+                image = imageCache.peek(scene, pixSize);
+                if (image == null)
+                {
+                    image = scene.image;
+                    imageRes = scene.imageRes;
+                    region = scene.imageRegion;
+                }
+            }
+            if (image != null)
             {
                 // draw the scene or swath highlight as needed
                 if ((onTopScene || swathHighlight) && md.canShowHighlight())
@@ -667,7 +710,28 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
                                          / actualPixSize);
                 int yi = (int)Math.round((imgProjUL_Y - scene.ulY)
                                          / actualPixSize);
-                g.drawImage (scene.image,xi,yi,this);
+                if (imageRes == pixSize)
+                {
+                    if (region != null)
+                    {
+                        xi += region.x;
+                        yi += region.y;
+                    }
+                    g.drawImage (image,xi,yi,this);
+                }
+                else
+                {
+                    double scale = currSensor.getActualResolution(imageRes)
+                                 / actualPixSize;
+                    if (region != null)
+                    {
+                        xi += (int)Math.round(region.x * scale);
+                        yi += (int)Math.round(region.y * scale);
+                    }
+                    int width = (int)Math.round(image.getWidth(null) * scale);
+                    int height = (int)Math.round(image.getHeight(null)*scale);
+                    g.drawImage (image,xi,yi,width,height,this);
+                }
             }
             else if (cellsToDisplay != Sensor.SINGLE_SCENE)
             {
@@ -713,6 +777,234 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
         }
     }
 
+    // helper method to draw the scenes covering the mosaic in the off screen
+    // buffer.  The scenes are drawn into the mosaic buffer, which is only
+    // redrawn when something drawn in it changes, and the mosaic buffer is
+    // copied to the off screen buffer.  While dragging past the edge of the
+    // scroll area, the copy is shifted by the drag offset and only the
+    // strips it uncovers are drawn from the scenes.
+    //-----------------------------------------------------------------------
+    private void drawMosaic(Graphics offg)
+    {
+        offg.setColor(Color.BLACK);
+        if (mosaicBuffer == null)
+        {
+            offg.fillRect(0,0,osbWidth,osbHeight);
+            paintMosaic(offg);
+            return;
+        }
+
+        // redraw the mosaic buffer if needed, without the drag offset.  A
+        // buffer drawn at reduced quality is redrawn once full quality is
+        // restored.
+        MosaicState state = nextMosaicState;
+        collectMosaicState(state);
+        boolean reduced = renderQuality.isReduced();
+        if (!mosaicValid || !state.matches(mosaicState)
+            || (mosaicReduced && !reduced))
+        {
+            int dragX = dragOffset.x;
+            int dragY = dragOffset.y;
+            dragOffset.x = 0;
+            dragOffset.y = 0;
+            Graphics mg = mosaicBuffer.getGraphics();
+            renderQuality.applyHints(mg);
+            mg.setColor(Color.BLACK);
+            mg.fillRect(0,0,osbWidth,osbHeight);
+            paintMosaic(mg);
+            mg.dispose();
+            dragOffset.x = dragX;
+            dragOffset.y = dragY;
+            nextMosaicState = mosaicState;
+            mosaicState = state;
+            mosaicValid = true;
+            mosaicReduced = reduced;
+        }
+
+        // copy the mosaic buffer, shifted by the drag offset
+        int x = -dragOffset.x;
+        int y = dragOffset.y;
+        offg.drawImage(mosaicBuffer,x,y,this);
+        if ((x == 0) && (y == 0))
+            return;
+
+        // draw the strips uncovered by the shift
+        Vector strips = getUncoveredStrips(x,y,osbWidth,osbHeight);
+        for (int i = 0; i < strips.size(); i++)
+        {
+            Rectangle strip = (Rectangle)strips.elementAt(i);
+            offg.setClip(strip);
+            offg.fillRect(strip.x,strip.y,strip.width,strip.height);
+            paintMosaic(offg);
+        }
+        offg.setClip(null);
+    }
+
+    // method to return the strips of an area that are uncovered when a
+    // drawing of the same size is shifted by x/y
+    //-----------------------------------------------------------------
+    static Vector getUncoveredStrips(int x, int y, int width, int height)
+    {
+        Vector strips = new Vector();
+        if (x > 0)
+            strips.addElement(new Rectangle(0,0,x,height));
+        else if (x < 0)
+            strips.addElement(new Rectangle(width + x,0,-x,height));
+        if (y > 0)
+            strips.addElement(new Rectangle(0,0,width,y));
+        else if (y < 0)
+            strips.addElement(new Rectangle(0,height + y,width,-y));
+        return strips;
+    }
+
+    // helper method to collect everything that determines what paintMosaic
+    // draws, other than the drag offset.  The mosaic buffer is redrawn when
+    // it changes.  The images are fully decoded when they are set in the
+    // scenes, so they are compared by reference.  The z-order and the upper
+    // left corner are copied into arrays kept from paint to paint.  Each
+    // visible scene without an image at the current resolution still costs
+    // a lookup in the image cache.
+    //----------------------------------------------------------------------
+    private void collectMosaicState(MosaicState state)
+    {
+        Sensor currSensor = applet.sensorMenu.getCurrentSensor();
+        int pixSize = md.pixelSize;
+        BrowseImageCache imageCache = md.imageLoader.getImageCache();
+
+        state.clear();
+        state.add(currSensor);
+        state.add(pixSize);
+        state.add(Double.doubleToLongBits(md.actualPixelSize));
+        if (md.mosaicCoords.getUpperLeftCorner(stateCorner))
+            state.add(stateCorner);
+        else
+            state.add((Point)null);
+        state.add(offsetToCenterDisplay);
+        state.add(md.getCurrentScene());
+        state.add(md.canShowHighlight());
+        state.add(currSensor.hasSwathMode
+                  && applet.toolsMenu.isSwathModeEnabled());
+
+        stateScenes = md.getZOrder().getSnapshot(stateScenes);
+        for (int i = 0; stateScenes[i] != null; i++)
+        {
+            Metadata scene = stateScenes[i];
+            state.add(scene);
+            state.add(md.canDisplay(scene));
+            state.add(scene.screenLocation);
+            state.add(scene.imageRes);
+            state.add(scene.imageRegion);
+            state.add(scene.image);
+            if (scene.visible
+                && ((scene.image == null) || (scene.imageRes != pixSize)))
+            {
+                state.add(imageCache.peek(scene, pixSize));
+            }
+        }
+    }
+
+    // class to hold the state the mosaic buffer is drawn for, as the
+    // objects compared by reference and the values compared directly.  The
+    // arrays are reused from paint to paint instead of boxing the values in
+    // a new collection each time.
+    //---------------------------------------------------------------------
+    private static class MosaicState
+    {
+        private Object[] refs = new Object[64]; // objects in the state
+        private int numRefs;                    // number of objects
+        private long[] values = new long[64];   // values in the state
+        private int numValues;                  // number of values
+
+        // method to empty the state
+        //--------------------------
+        void clear()
+        {
+            for (int i = 0; i < numRefs; i++)
+                refs[i] = null;
+            numRefs = 0;
+            numValues = 0;
+        }
+
+        // method to add an object compared by reference
+        //----------------------------------------------
+        void add(Object ref)
+        {
+            if (numRefs == refs.length)
+            {
+                Object[] temp = new Object[refs.length * 2];
+                System.arraycopy(refs, 0, temp, 0, numRefs);
+                refs = temp;
+            }
+            refs[numRefs++] = ref;
+        }
+
+        // method to add a value
+        //----------------------
+        void add(long value)
+        {
+            if (numValues == values.length)
+            {
+                long[] temp = new long[values.length * 2];
+                System.arraycopy(values, 0, temp, 0, numValues);
+                values = temp;
+            }
+            values[numValues++] = value;
+        }
+
+        // method to add a flag
+        //---------------------
+        void add(boolean flag)
+        {
+            add(flag ? 1L : 0L);
+        }
+
+        // method to add a point by value (a null point is added as a flag)
+        //-----------------------------------------------------------------
+        void add(Point point)
+        {
+            add(point != null);
+            if (point != null)
+            {
+                add(point.x);
+                add(point.y);
+            }
+        }
+
+        // method to add a rectangle by value (a null rectangle is added as
+        // a flag)
+        //-----------------------------------------------------------------
+        void add(Rectangle rect)
+        {
+            add(rect != null);
+            if (rect != null)
+            {
+                add(rect.x);
+                add(rect.y);
+                add(rect.width);
+                add(rect.height);
+            }
+        }
+
+        // method to compare with another state
+        //-------------------------------------
+        boolean matches(MosaicState other)
+        {
+            if ((numRefs != other.numRefs) || (numValues != other.numValues))
+                return false;
+            for (int i = 0; i < numRefs; i++)
+            {
+                if (refs[i] != other.refs[i])
+                    return false;
+            }
+            for (int i = 0; i < numValues; i++)
+            {
+                if (values[i] != other.values[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
     // handle the timer events for refreshing the display
     //---------------------------------------------------
     public void actionPerformed(ActionEvent event)
@@ -727,6 +1019,7 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
     //----------------------------------------------
     public void paintComponent (Graphics g) 
     {
+        long startTime = System.currentTimeMillis();
         Dimension size = applet.imgScroll.getViewport().getSize();
 
         // if the refresh timer is running and there isn't a reason for it
@@ -758,6 +1051,8 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
             // uses
             if (offScreenBuffer != null)
                 offScreenBuffer.flush();
+            if (mosaicBuffer != null)
+                mosaicBuffer.flush();
 
             // establish the size of the off screen buffer.  Use the max of
             // the old size and the current needed size (+20 for some growth
@@ -766,6 +1061,8 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
             osbWidth = Math.max(canvasSize.width + 20, osbWidth);
             osbHeight = Math.max(canvasSize.height + 20, osbHeight);
             offScreenBuffer = createImage(osbWidth,osbHeight);
+            mosaicBuffer = createImage(osbWidth,osbHeight);
+            mosaicValid = false;
         }
 
         // check whether the mosaic data object is busy.  If it is, check
@@ -779,13 +1076,10 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
         {
             // get a graphics context for the off screen image
             Graphics offg = offScreenBuffer.getGraphics();
+            renderQuality.applyHints(offg);
 
-            // clear the off screen buffer
-            offg.setColor(Color.BLACK);
-            offg.fillRect(0,0,osbWidth,osbHeight);
-            
             // paint the scenes covering the mosaic
-            paintMosaic(offg);
+            drawMosaic(offg);
 
             // draw the map layers in the off screen buffer
             mapLayers.paint(offg);
@@ -860,6 +1154,9 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
             // copy the off screen buffer to the display
             g.drawImage(offScreenBuffer,0,0,this);
         }
+
+        // let the quality controller know how long the frame took
+        renderQuality.frameDone(System.currentTimeMillis() - startTime);
     }
 
     // Handle Key events
@@ -868,6 +1165,9 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
     {
         int key = event.getKeyCode();
 
+        // keyboard navigation moves the display, so draw it quickly
+        renderQuality.interaction();
+
         switch (key) 
         {
             case KeyEvent.VK_RIGHT:
@@ -1232,6 +1532,9 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
         if (md.isUnstableTOC())
             return;
         
+        // draw the display quickly while it is being dragged
+        renderQuality.interaction();
+
         // show the move cursor when dragging starts
         if (currentCursor != applet.moveCursor)
         {
@@ -1345,10 +1648,37 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
             applet.statusBar.showStatus("");
     }
 
+    // method to return the part of the display visible in the scroll area,
+    // in the same coordinates as the scene screen locations (i.e. without
+    // the centering offset).  Must be called from the GUI thread.
+    //---------------------------------------------------------------------
+    public Rectangle getVisibleArea()
+    {
+        Rectangle area = applet.imgScroll.getViewport().getViewRect();
+        area.translate(-offsetToCenterDisplay.x, -offsetToCenterDisplay.y);
+        return area;
+    }
+
     // method to return the upper left corner coordinate (X/Y) of the 
     // image display area in meters.
     //---------------------------------------------------------------
     public Point getUpperLeftCorner()
+    {
+        return getUpperLeftCorner(true);
+    }
+
+    // method to return the offset of a drag past the edge of the scroll area
+    // (zero when not dragging)
+    //-----------------------------------------------------------------------
+    Point getDragOffset()
+    {
+        return new Point(dragOffset);
+    }
+
+    // method to return the upper left corner of the display with or without
+    // the offset of a drag in progress
+    //----------------------------------------------------------------------
+    Point getUpperLeftCorner(boolean withDragOffset)
     {
         // get the mosaic coordinates
         Point ul = md.mosaicCoords.getUpperLeftCorner();
@@ -1362,7 +1692,7 @@ public class ImagePane extends JPanel implements KeyListener, MouseListener,
         ul.y += (int)Math.round(offsetToCenterDisplay.y * pixelSize);
 
         // if there is a drag offset, apply it too
-        if ((dragOffset.x != 0) || (dragOffset.y != 0))
+        if (withDragOffset && ((dragOffset.x != 0) || (dragOffset.y != 0)))
         {
             ul.x += (int)Math.round(dragOffset.x * pixelSize);
             ul.y += (int)Math.round(dragOffset.y * pixelSize);
@@ -3,6 +3,11 @@
 //--------------------------------------------------------------------
 import java.util.Vector;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.awt.Color;
 
 public class LandsatCombined extends LandsatSensor
@@ -15,6 +20,8 @@ public class LandsatCombined extends LandsatSensor
 
     private Sensor[] sensors;     // other sensors contained in this dataset
     private int startYear;        // starting year of the combined datasets
+    private ExecutorService readPool; // pool of threads reading the TOCs of
+                                  // the datasets at the same time
 
     // Constructor
     //------------
@@ -60,29 +67,126 @@ public class LandsatCombined extends LandsatSensor
         hiddenSceneList = new CombinedSceneList(applet, this, hiddenLists);
     }
 
-    // method to read the multiple datasets into the TOC
-    //--------------------------------------------------
+    // method to read the multiple datasets into the TOC.  The datasets are
+    // read at the same time and then merged.  If the TOC load is cancelled
+    // before all the datasets are read, the TOC is left invalid.
+    //----------------------------------------------------------------------
     public void readTOC(TOC cell)
     {
-        cell.read(sensors[0]);
-        TOC partialCell = new TOC(applet.getCodeBase(), cell.gridCol, 
-                                  cell.gridRow);
-        for (int i = 1; i < sensors.length; i++)
+        synchronized (this)
         {
-            if (cell.valid)
+            // the pool reads the datasets other than the first one for as
+            // many cells as the mosaic fetches at once
+            if (readPool == null)
             {
-                // the cell is valid, so read the next sensor's cell and add
-                // it to the current one
-                partialCell.read(sensors[i]);
-                cell.add(partialCell);
+                int threads = applet.md.getTocLoaderCount()
+                            * Math.max(sensors.length - 1, 1);
+                readPool = Executors.newFixedThreadPool(threads,
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t = new Thread(r, "Combined TOC Thread");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
             }
-            else
+        }
+
+        // read the first dataset on this thread while the others are read
+        // by the pool
+        TOC[] parts = new TOC[sensors.length];
+        PartRead[] partReads = new PartRead[sensors.length];
+        Future[] reads = new Future[sensors.length];
+        for (int i = 0; i < sensors.length; i++)
+        {
+            parts[i] = new TOC(cell.getAppletURL(), cell.gridCol,
+                               cell.gridRow);
+            partReads[i] = new PartRead(parts[i], sensors[i]);
+            if (i > 0)
+                reads[i] = readPool.submit(partReads[i]);
+        }
+        partReads[0].run();
+        boolean complete = partReads[0].done;
+
+        // wait for the rest of the datasets
+        boolean interrupted = false;
+        for (int i = 1; i < sensors.length; i++)
+        {
+            while (true)
             {
-                // the cell is not valid, so read the new sensor directly into
-                // the main cell
-                cell.read(sensors[i]);
+                try
+                {
+                    reads[i].get();
+                    complete &= partReads[i].done;
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+                catch (ExecutionException e)
+                {
+                    System.out.println("Exception:  "+e.getCause());
+                    parts[i].valid = false;
+                    break;
+                }
             }
         }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        // don't merge the datasets that were read if the rest were skipped
+        // because the load was cancelled
+        if (complete)
+            cell.merge(parts);
+    }
+
+    // class to read the TOC of one dataset on a read pool thread.  The read
+    // is skipped if the TOC load has been cancelled by the time it starts.
+    //----------------------------------------------------------------------
+    private class PartRead implements Runnable
+    {
+        private TOC cell;           // cell to read
+        private Sensor sensor;      // dataset to read the cell for
+        boolean done;               // flag that the dataset was read
+
+        PartRead(TOC cell, Sensor sensor)
+        {
+            this.cell = cell;
+            this.sensor = sensor;
+        }
+
+        public void run()
+        {
+            if (applet.md.isTocLoadCancelled())
+                return;
+            cell.read(sensor);
+            done = true;
+        }
+    }
+
+    // method to return whether a cell might have inventory in any of the
+    // datasets
+    //---------------------------------------------------------------------
+    public boolean hasInventory(int gridCol, int gridRow)
+    {
+        for (int i = 0; i < sensors.length; i++)
+        {
+            if (sensors[i].hasInventory(gridCol, gridRow))
+                return true;
+        }
+        return false;
+    }
+
+    // method to forget the cells found to have no TOC file in each of the
+    // datasets
+    //--------------------------------------------------------------------
+    public void clearNoInventory()
+    {
+        for (int i = 0; i < sensors.length; i++)
+            sensors[i].clearNoInventory();
     }
 
     // method to determin the different color of border based on which dataset
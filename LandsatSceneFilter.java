@@ -40,12 +40,8 @@ class LandsatSceneFilter implements SceneFilter
         {
             // go forward one date, skipping scenes that are not visible.
             // If it is the last date, don't do anything
-            int next = cell.currentDateIndex + 1;
-            while ((next < cell.numImg) && !cell.scenes[next].visible)
-            {
-                next++;
-            }
-            if (next < cell.numImg) 
+            int next = cell.store.nextVisible(cell.currentDateIndex + 1);
+            if (next != -1) 
             {
                 md.drawNewDate(cell.gridCol,cell.gridRow,next);
             }
@@ -75,11 +71,7 @@ class LandsatSceneFilter implements SceneFilter
         {
             // go back one date, skipping over scenes that are not visible.
             // When at the first scene, don't move any further
-            int next = cell.currentDateIndex - 1;
-            while ((next >= 0) && !cell.scenes[next].visible)
-            {
-                next--;
-            }
+            int next = cell.store.previousVisible(cell.currentDateIndex - 1);
             if (next >= 0)
             {
                 md.drawNewDate(cell.gridCol,cell.gridRow,next);
@@ -103,23 +95,23 @@ class LandsatSceneFilter implements SceneFilter
 
         // if target date is off end of available dates, make the last
         // date the target date
-        if (targetDate > cell.scenes[last].date)
-            targetDate = cell.scenes[last].date;
+        if (targetDate > cell.store.date[last])
+            targetDate = cell.store.date[last];
 
         // if target date is off start of available dates, make the first
         // date the target date
-        if (targetDate < cell.scenes[0].date)
-            targetDate = cell.scenes[0].date;
+        if (targetDate < cell.store.date[0])
+            targetDate = cell.store.date[0];
 
         int newIndex = 0;
 
         // look for the target date or the next one after it
         for (int index = 0; index <= last; index++)
         {
-            if (cell.scenes[index].visible)
+            if (cell.store.isVisible(index))
             {
                 newIndex = index;
-                if (cell.scenes[index].date >= targetDate)
+                if (cell.store.date[index] >= targetDate)
                     break;
             }
         }
@@ -149,27 +141,15 @@ class LandsatSceneFilter implements SceneFilter
         // look through the list of scenes from first to last until one is 
         // found that doesn't have too much cloud cover to establish the first
         // date available
-        for (int index = 0; index < cell.numImg; index++)
-        {
-            if (cell.scenes[index].visible)
-            {
-                firstFilteredDate = index;
-                break;
-            }
-        }
+        int first = cell.store.nextVisible(0);
+        if (first != -1)
+            firstFilteredDate = first;
 
         // look through the list of scenes from last until the first that
         // passed the filter to find one that doesn't have too much cloud cover
         // to establish the last date available
-        lastFilteredDate = 0;
-        for (int index = cell.numImg - 1; index >= firstFilteredDate; index--)
-        {
-            if (cell.scenes[index].visible)
-            {
-                lastFilteredDate = index;
-                break;
-            }
-        }
+        int last = cell.store.previousVisible(cell.numImg - 1);
+        lastFilteredDate = (last != -1) ? last : 0;
     }
 
     // returns true if another date is available after the current date
@@ -201,13 +181,9 @@ class LandsatSceneFilter implements SceneFilter
     public boolean isNextDateAvailable(Metadata scene)
     {
         TOC cell = md.getCellForScene(scene);
-        for (int index = cell.currentDateIndex + 1; index < cell.numImg; 
-             index++)
-        {
-            if (cell.scenes[index].visible)
-                return true;
-        }
-        return false;
+        if (cell.numImg < 1)
+            return false;
+        return (cell.store.nextVisible(cell.currentDateIndex + 1) != -1);
     }
 
     // returns true if another date is available before the current date for
@@ -216,10 +192,9 @@ class LandsatSceneFilter implements SceneFilter
     public boolean isPrevDateAvailable(Metadata scene)
     {
         TOC cell = md.getCellForScene(scene);
-        for (int index = cell.currentDateIndex - 1; index >= 0; index--)
-            if (cell.scenes[index].visible)
-                return true;
-        return false;
+        if (cell.numImg < 1)
+            return false;
+        return (cell.store.previousVisible(cell.currentDateIndex - 1) != -1);
     }
 
     // jumps to the first date that hasn't been filtered
@@ -244,11 +219,11 @@ class LandsatSceneFilter implements SceneFilter
     public int getFirstYear()
     {
         TOC cell = md.getCurrentCell();
-        return cell.scenes[0].date/10000;
+        return cell.store.date[0]/10000;
     }
     public int getLastYear()
     {
         TOC cell = md.getCurrentCell();
-        return cell.scenes[cell.numImg-1].date/10000;
+        return cell.store.date[cell.numImg-1]/10000;
     }
 }
@@ -100,7 +100,7 @@ public class LatLongEntry extends JPanel implements ActionListener, Observer
 
             // calculate the X/Y coordinates of the selected scene center
             Metadata scene = cell.scenes[cell.currentDateIndex];
-            latLong = md.getLatLong(scene.centerXY);
+            latLong = md.getLatLong(scene.getCenterXY());
         }
         else
         {
@@ -0,0 +1,311 @@
+// LineFeatureStore.java implements a compact store for the features read
+// from one linework file.  Instead of a GeneralPath for each feature, the
+// points of all the features are packed into a single int array of x/y
+// projection coordinates, with index arrays for where each feature's parts
+// start and where each part's points start.  The bounding box of each
+// feature is kept so the features outside the display can be skipped
+// without looking at their points.
+//
+// When the store is finished, each point is given a level of detail using
+// the Douglas-Peucker algorithm.  The level is the power of two (in meters)
+// below the distance the point moves the line from its simplified shape,
+// so dropping the points below a level leaves the line within that
+// distance of the original.  The end points of each part are always kept.
+// When building screen paths, the points below the level for the display's
+// pixel size are skipped, so coarse resolutions don't stroke the thousands
+// of points that fall in the same pixel.  The levels take one byte for
+// each point.
+//
+// The store is filled by the load thread while reading a file and is not
+// changed once finish is called, so it can then be read from the GUI
+// thread.
+//--------------------------------------------------------------------------
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+
+class LineFeatureStore
+{
+    private int numFeatures;    // number of features
+    private int numParts;       // number of parts (lines/polygons)
+    private int numPoints;      // number of points
+    private String[] names;     // name of each feature (null if the layer
+                                // doesn't have names)
+    private int[] featureParts; // index of the first part of each feature,
+                                // plus the total number of parts at the end
+    private int[] partPoints;   // index of the first point of each part,
+                                // plus the total number of points at the end
+    private int[] coords;       // x/y coordinates of the points
+    private int[] bounds;       // min x, min y, max x, max y of each feature
+    private byte[] levels;      // level of detail of each point
+
+    // level for the points that are always kept, and the highest level a
+    // simplification distance can have
+    private static final byte KEEP_LEVEL = Byte.MAX_VALUE;
+    private static final int MAX_LEVEL = 62;
+
+    // constructor
+    //------------
+    LineFeatureStore(boolean hasNames)
+    {
+        if (hasNames)
+            names = new String[16];
+        featureParts = new int[17];
+        partPoints = new int[17];
+        coords = new int[256];
+        bounds = new int[64];
+    }
+
+    // method to start a new feature
+    //------------------------------
+    void startFeature(String name)
+    {
+        if (numFeatures + 2 > featureParts.length)
+            featureParts = resize(featureParts, featureParts.length * 2);
+        if ((numFeatures + 1) * 4 > bounds.length)
+            bounds = resize(bounds, bounds.length * 2);
+        if ((names != null) && (numFeatures + 1 > names.length))
+        {
+            String[] temp = new String[names.length * 2];
+            System.arraycopy(names, 0, temp, 0, numFeatures);
+            names = temp;
+        }
+        if (names != null)
+            names[numFeatures] = name;
+        featureParts[numFeatures] = numParts;
+        int b = numFeatures * 4;
+        bounds[b] = Integer.MAX_VALUE;
+        bounds[b + 1] = Integer.MAX_VALUE;
+        bounds[b + 2] = Integer.MIN_VALUE;
+        bounds[b + 3] = Integer.MIN_VALUE;
+        numFeatures++;
+    }
+
+    // method to start a new part of the current feature
+    //--------------------------------------------------
+    void startPart()
+    {
+        if (numParts + 2 > partPoints.length)
+            partPoints = resize(partPoints, partPoints.length * 2);
+        partPoints[numParts] = numPoints;
+        numParts++;
+    }
+
+    // method to add a point to the current part
+    //------------------------------------------
+    void addPoint(int x, int y)
+    {
+        if (numPoints * 2 + 2 > coords.length)
+            coords = resize(coords, coords.length * 2);
+        coords[numPoints * 2] = x;
+        coords[numPoints * 2 + 1] = y;
+        numPoints++;
+
+        int b = (numFeatures - 1) * 4;
+        if (x < bounds[b])
+            bounds[b] = x;
+        if (y < bounds[b + 1])
+            bounds[b + 1] = y;
+        if (x > bounds[b + 2])
+            bounds[b + 2] = x;
+        if (y > bounds[b + 3])
+            bounds[b + 3] = y;
+    }
+
+    // method to call when all the features have been added.  Trims the
+    // arrays to the space used.
+    //------------------------------------------------------------------
+    void finish()
+    {
+        featureParts[numFeatures] = numParts;
+        partPoints[numParts] = numPoints;
+        featureParts = resize(featureParts, numFeatures + 1);
+        partPoints = resize(partPoints, numParts + 1);
+        coords = resize(coords, numPoints * 2);
+        bounds = resize(bounds, numFeatures * 4);
+        if (names != null)
+        {
+            String[] temp = new String[numFeatures];
+            System.arraycopy(names, 0, temp, 0, numFeatures);
+            names = temp;
+        }
+
+        // find the level of detail of the points in each part
+        levels = new byte[numPoints];
+        for (int part = 0; part < numParts; part++)
+            setLevels(partPoints[part], partPoints[part + 1] - 1);
+    }
+
+    // method to return the lowest level of detail a point needs to be drawn
+    // when the lines can be moved by up to the given distance (in meters)
+    //-----------------------------------------------------------------------
+    static int getDetailLevel(double tolerance)
+    {
+        int level = 0;
+        while ((level < MAX_LEVEL)
+               && ((double)(1L << (level + 1)) <= tolerance))
+        {
+            level++;
+        }
+        return level;
+    }
+
+    // helper method to set the levels of detail for the points of one part,
+    // from the first to the last point index given.  The Douglas-Peucker
+    // algorithm is run with a stack instead of recursion since the parts
+    // can have thousands of points.  A point's level is never higher than
+    // the level of the point that split its span, so the points kept at
+    // any level are exactly the ones the algorithm keeps for that distance.
+    //-----------------------------------------------------------------------
+    private void setLevels(int first, int last)
+    {
+        if (last < first)
+            return;
+        levels[first] = KEEP_LEVEL;
+        levels[last] = KEEP_LEVEL;
+        if (last - first < 2)
+            return;
+
+        // the stack holds the spans still to split and the level of the
+        // point that created each span
+        int[] stack = new int[64 * 3];
+        int top = 0;
+        stack[top++] = first;
+        stack[top++] = last;
+        stack[top++] = KEEP_LEVEL;
+        while (top > 0)
+        {
+            int parentLevel = stack[--top];
+            int end = stack[--top];
+            int start = stack[--top];
+            if (end - start < 2)
+                continue;
+
+            // find the point farthest from the line between the ends
+            double x1 = coords[start * 2];
+            double y1 = coords[start * 2 + 1];
+            double x2 = coords[end * 2];
+            double y2 = coords[end * 2 + 1];
+            int farthest = start + 1;
+            double maxDistance = -1;
+            for (int i = start + 1; i < end; i++)
+            {
+                double distance = Line2D.ptSegDistSq(x1, y1, x2, y2,
+                                        coords[i * 2], coords[i * 2 + 1]);
+                if (distance > maxDistance)
+                {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+
+            int level = Math.min(parentLevel,
+                                 toLevel(Math.sqrt(maxDistance)));
+            levels[farthest] = (byte)level;
+
+            // split the span at the farthest point
+            if (top + 6 > stack.length)
+            {
+                int[] temp = new int[stack.length * 2];
+                System.arraycopy(stack, 0, temp, 0, top);
+                stack = temp;
+            }
+            stack[top++] = start;
+            stack[top++] = farthest;
+            stack[top++] = level;
+            stack[top++] = farthest;
+            stack[top++] = end;
+            stack[top++] = level;
+        }
+    }
+
+    // helper method to convert a distance (in meters) to a level of detail.
+    // Distances under a meter get a level below zero.
+    //-----------------------------------------------------------------------
+    private static int toLevel(double distance)
+    {
+        if (distance < 1.0)
+            return -1;
+        int level = (int)Math.floor(Math.log(distance) / Math.log(2.0));
+        return Math.min(MAX_LEVEL, level);
+    }
+
+    // method to return the number of features
+    //----------------------------------------
+    int getNumFeatures()
+    {
+        return numFeatures;
+    }
+
+    // method to return the name of a feature (null if it has none)
+    //-------------------------------------------------------------
+    String getName(int feature)
+    {
+        return (names != null) ? names[feature] : null;
+    }
+
+    // method to return the number of points in a feature
+    //---------------------------------------------------
+    int getNumPoints(int feature)
+    {
+        return partPoints[featureParts[feature + 1]]
+             - partPoints[featureParts[feature]];
+    }
+
+    // method to return whether the bounding box of a feature intersects an
+    // area in projection coordinates.  A feature with a single point must
+    // be inside the area.
+    //----------------------------------------------------------------------
+    boolean intersects(int feature, double minX, double minY, double maxX,
+                       double maxY)
+    {
+        int b = feature * 4;
+        if (getNumPoints(feature) == 1)
+        {
+            return (bounds[b] >= minX) && (bounds[b] < maxX)
+                && (bounds[b + 1] >= minY) && (bounds[b + 1] < maxY);
+        }
+        return (bounds[b] <= maxX) && (bounds[b + 2] >= minX)
+            && (bounds[b + 1] <= maxY) && (bounds[b + 3] >= minY);
+    }
+
+    // method to build the path for a feature in screen coordinates, given
+    // the upper left corner of the display in projection coordinates and
+    // the pixel size.  Only the points at or above the level of detail
+    // given are included.
+    //---------------------------------------------------------------------
+    GeneralPath toScreenPath(int feature, double ulX, double ulY,
+                             double pixelSize, int minLevel)
+    {
+        double scale = 1.0 / pixelSize;
+        int firstPart = featureParts[feature];
+        int lastPart = featureParts[feature + 1];
+        GeneralPath path = new GeneralPath(GeneralPath.WIND_NON_ZERO,
+                                           getNumPoints(feature));
+        for (int part = firstPart; part < lastPart; part++)
+        {
+            int end = partPoints[part + 1] * 2;
+            int i = partPoints[part] * 2;
+            if (i >= end)
+                continue;
+            path.moveTo((float)((coords[i] - ulX) * scale),
+                        (float)((ulY - coords[i + 1]) * scale));
+            for (i += 2; i < end; i += 2)
+            {
+                if (levels[i / 2] < minLevel)
+                    continue;
+                path.lineTo((float)((coords[i] - ulX) * scale),
+                            (float)((ulY - coords[i + 1]) * scale));
+            }
+        }
+        return path;
+    }
+
+    // helper method to copy an array to a new length
+    //-----------------------------------------------
+    private static int[] resize(int[] array, int length)
+    {
+        int[] temp = new int[length];
+        System.arraycopy(array, 0, temp, 0, Math.min(array.length, length));
+        return temp;
+    }
+}
@@ -1,5 +1,8 @@
 // LineMapLayer.java implements the base class for map layers that are 
-// made up of lines.
+// made up of lines.  The features read from each file are kept in a
+// LineFeatureStore, and clipping builds the screen paths for the visible
+// features from it, leaving out the points that are too close to the
+// simplified lines to show at the current pixel size.
 //--------------------------------------------------------------------
 import java.awt.BasicStroke;
 import java.awt.Color;
@@ -7,8 +10,6 @@ import java.awt.Dimension;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.PathIterator;
-import java.awt.geom.Rectangle2D;
-import java.awt.geom.Rectangle2D.Double;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
@@ -79,7 +80,8 @@ public class LineMapLayer extends TiledMapLayer
             if (isLoadCancelled.cancelled)
                 break;
 
-            Vector paths = new Vector(); // vector of general paths for file
+            LineFeatureStore features // features read from the file
+                    = new LineFeatureStore(hasNames);
             URL CurrentURL;         // URL for the current linework file
 
             if (applet.verboseOutput)
@@ -123,8 +125,7 @@ public class LineMapLayer extends TiledMapLayer
                     if (isLoadCancelled.cancelled)
                         break;
 
-                    NamedEntry entry = new LineMapLayer.NamedEntry();
-                    entry.numPoints = 0;
+                    String featureName = null;
 
                     // if the layer has feature names, read them from the file
                     if (hasNames)
@@ -155,7 +156,7 @@ public class LineMapLayer extends TiledMapLayer
                         }
 
                         // convert the byte array to a string and save it
-                        entry.name = new String(name,0,readNameSize);
+                        featureName = new String(name,0,readNameSize);
                     }
 
                     int numPts = data.readInt();
@@ -173,9 +174,8 @@ public class LineMapLayer extends TiledMapLayer
                         numPolys = data.readInt();
                     }
 
-                    // read all the polygons in this record, converting them
-                    // into a general path
-                    GeneralPath path = new GeneralPath();
+                    // read all the polygons in this record into the store
+                    features.startFeature(featureName);
                     for (int poly = 0; poly < numPolys; poly++)
                     {
                         boolean compressFlag = false; // assume not compressed
@@ -203,7 +203,8 @@ public class LineMapLayer extends TiledMapLayer
                         // read the first point
                         x = data.readInt();
                         y = data.readInt();
-                        path.moveTo(x, y);
+                        features.startPart();
+                        features.addPoint(x, y);
 
                         // read the remaining points in for this polygon
                         if (compressFlag == true)
@@ -216,7 +217,7 @@ public class LineMapLayer extends TiledMapLayer
                                 deltaY = data.readShort();
                                 x += deltaX;
                                 y += deltaY;
-                                path.lineTo(x, y);
+                                features.addPoint(x, y);
                             }
                         }
                         else
@@ -226,14 +227,10 @@ public class LineMapLayer extends TiledMapLayer
                             {
                                 x = data.readInt();
                                 y = data.readInt();
-                                path.lineTo(x, y);
+                                features.addPoint(x, y);
                             }
                         }
                     }
-                    // add the entry to the polygon vector
-                    entry.path = path;
-                    entry.numPoints += numPts;
-                    paths.addElement(entry);
                 }
                 
                 data.close();
@@ -252,11 +249,12 @@ public class LineMapLayer extends TiledMapLayer
                 System.out.println("Exception:  Read/Format Error");
             }
 
-            // add whatever paths were read to the file cache as long
+            // add whatever features were read to the file cache as long
             // as the load hasn't been cancelled (the data may not be 
             // complete if the load was cancelled)
+            features.finish();
             if (!isLoadCancelled.cancelled)
-                fileCache.setCacheContents(files[ii],paths);
+                fileCache.setCacheContents(files[ii],features);
 
             // FIXME - test code to allow simulating a slow
             // network connection
@@ -280,12 +278,8 @@ public class LineMapLayer extends TiledMapLayer
     public void clip(Point upperLeft, int intPixelSize, Dimension dispSize,
                      ProjectionTransformation proj)
     {
-        int i,j,ii;             // Loop counters
-        int numPts;             // Number of points in a line record
-        double[] coords = new double[6];
-
         // create a new vector object for the clipped paths
-        clippedPaths = new Vector();
+        Vector paths = new Vector();
 
         int ulx = upperLeft.x;
         int uly = upperLeft.y; 
@@ -295,69 +289,42 @@ public class LineMapLayer extends TiledMapLayer
         // get the cached data
         Vector data = fileCache.getCachedData();
 
-        // create a 2D rectangle for the display to filter out the paths
-        // that aren't visible (in projection space)
-        Rectangle2D dispAreaProjCoords
-            = new Rectangle2D.Double(ulx, uly - dispSize.height * pixelSize,
-                                     dispSize.width * pixelSize,
-                                     dispSize.height * pixelSize);
+        // the display area in projection space, to filter out the
+        // features that aren't visible
+        double minX = ulx;
+        double maxX = ulx + dispSize.width * pixelSize;
+        double minY = uly - dispSize.height * pixelSize;
+        double maxY = uly;
 
-        // create a transform to convert the path coordinates from projection
-        // space to screen space
-        AffineTransform transform = new AffineTransform();
-        transform.scale(1.0/pixelSize, -1.0/pixelSize);
-        transform.translate(-ulx, -uly);
+        // leave out the points that move the lines by less than half a
+        // pixel
+        int minLevel = LineFeatureStore.getDetailLevel(pixelSize / 2);
 
         // get the needed paths from the cached files
-        for (ii = 0; ii < data.size(); ii++)
+        for (int ii = 0; ii < data.size(); ii++)
         {
-            Vector cache = (Vector)data.elementAt(ii);
-            if (cache == null)
-            {
-//                System.out.println(LineworkFiles[ii] + " not in cache!");
+            LineFeatureStore features = (LineFeatureStore)data.elementAt(ii);
+            if (features == null)
                 continue;
-            }
 
-            // get number of paths in the cache
-            int numPaths = cache.size();
-
-            // Process each of the paths to see if it falls in the visible
-            // area
-            for (i = 0; i < numPaths; i++)
+            // build the screen paths for the features with a bounding box
+            // in the visible area
+            int numFeatures = features.getNumFeatures();
+            for (int i = 0; i < numFeatures; i++)
             {
-                // get the current entry
-                NamedEntry entry = (NamedEntry)cache.elementAt(i);
-
-                // test whether the path is visible
-                boolean visible = false;
-                if (entry.numPoints != 1)
-                {
-                    // it is a general path, so use the intersects test
-                    visible = entry.path.intersects(dispAreaProjCoords);
-                }
-                else
-                {
-                    // single point, so use the contains test instead
-                    PathIterator iter
-                            = entry.path.getPathIterator(identityTransform);
-                    int type = iter.currentSegment(coords);
-                    visible = dispAreaProjCoords.contains(coords[0], coords[1]);
-                }
-
-                // if the path is visible, add it to the clipped list
-                if (visible)
-                {
-                    NamedEntry newEntry = new LineMapLayer.NamedEntry();
-                    newEntry.name = entry.name;
-                    newEntry.numPoints = entry.numPoints;
-
-                    // transform the path to the screen coordinates
-                    newEntry.path = (GeneralPath)entry.path.
-                            createTransformedShape(transform);
-                    clippedPaths.addElement(newEntry);
-                }
+                if (!features.intersects(i, minX, minY, maxX, maxY))
+                    continue;
+
+                NamedEntry entry = new LineMapLayer.NamedEntry();
+                entry.name = features.getName(i);
+                entry.numPoints = features.getNumPoints(i);
+                entry.path = features.toScreenPath(i, ulx, uly, pixelSize,
+                                                   minLevel);
+                paths.addElement(entry);
             }
         }
+
+        clippedPaths = paths;
     }
 
     // method to find the name associated with a feature that contains an X/Y
@@ -439,9 +406,14 @@ public class LineMapLayer extends TiledMapLayer
             Object savedRenderingHint = null;
             float[] coords = new float[6];
 
+            // at reduced quality, skip the antialiasing and the shadow and
+            // use a stroke that is cheaper to draw
+            boolean reduced = RenderQuality.isReduced(g);
+            boolean smooth = antialias && !reduced;
+
             // turn on antialiasing for layers that request it.  Can't turn it
             // on for all layers since it significantly slows down drawing.
-            if (antialias)
+            if (smooth)
             {
                 // save the current antialiasing setting and turn it on
                 savedRenderingHint = g2.getRenderingHint(
@@ -453,17 +425,34 @@ public class LineMapLayer extends TiledMapLayer
             // paths are available, so translate the origin one pixel 
             // down and left (y increases down) and draw the black 
             // shadow underneath the paths
-            g2.translate(-1,1);
-            g2.setColor(Color.BLACK);
+            int firstLoop = 0;
+            if (reduced)
+            {
+                firstLoop = 1;
+                g2.setColor(color);
+            }
+            else
+            {
+                g2.translate(-1,1);
+                g2.setColor(Color.BLACK);
+            }
 
             // set the graphics object to draw lines of the correct width
             Stroke savedStroke = g2.getStroke();
-            g2.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_ROUND,
-                                         BasicStroke.JOIN_ROUND));
+            if (reduced)
+            {
+                g2.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_BUTT,
+                                             BasicStroke.JOIN_BEVEL));
+            }
+            else
+            {
+                g2.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_ROUND,
+                                             BasicStroke.JOIN_ROUND));
+            }
 
             // loop twice, once to draw the black shadow and once to draw the
             // actual line
-            for (int loops = 0; loops < 2; loops++)
+            for (int loops = firstLoop; loops < 2; loops++)
             {
                 // draw all the paths
                 for (int i = 0; i < numPaths; i++)
@@ -492,7 +481,7 @@ public class LineMapLayer extends TiledMapLayer
             }
 
             // restore the original rendering hint if needed
-            if (antialias)
+            if (smooth)
             {
                 g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, 
                                     savedRenderingHint);
@@ -1,5 +1,10 @@
 // MapLayer.java implements the base class for all the different types of
 // map layers.
+//
+// Layers whose drawing only changes when they are clipped or their color
+// changes can have their drawing cached in a raster by the MapLayers
+// container.  Each layer counts the changes to its drawing so the container
+// can tell when a cached drawing is stale.
 //------------------------------------------------------------------------
 import java.awt.Color;
 import java.awt.Component;
@@ -21,6 +26,9 @@ public abstract class MapLayer
                               // search results layer might not be available in
                               // some installations.
     protected Color color;    // color to draw the map layer in
+    private int drawingVersion; // count of the changes to the drawing of
+                              // the layer, for detecting stale cached
+                              // drawings
 
     // constructor for the MapLayer class
     //-----------------------------------
@@ -70,6 +78,7 @@ public abstract class MapLayer
     public void setColor(Color color)
     {
         this.color = color;
+        drawingVersion++;
         if (layerOn)
             parent.repaint();
     }
@@ -156,4 +165,27 @@ public abstract class MapLayer
     // method to draw the map layer on the display
     //--------------------------------------------
     public abstract void draw(Graphics g);
+
+    // method to return true if the drawing of the layer only changes when
+    // it is clipped or its color changes, so it can be cached in a raster.
+    // This default routine returns false.
+    //---------------------------------------------------------------------
+    public boolean canCacheDrawing()
+    {
+        return false;
+    }
+
+    // method to mark any cached drawing of the layer as stale
+    //--------------------------------------------------------
+    void invalidateRaster()
+    {
+        drawingVersion++;
+    }
+
+    // method to return the count of changes to the drawing of the layer
+    //------------------------------------------------------------------
+    int getDrawingVersion()
+    {
+        return drawingVersion;
+    }
 }
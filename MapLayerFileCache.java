@@ -10,7 +10,8 @@ public class MapLayerFileCache
 {
     class CacheEntry
     {
-        Vector data;
+        Object data;            // contents of the file, in the form the
+                                // map layer keeps it
         int age;
         boolean loaded;
     }
@@ -136,7 +137,7 @@ public class MapLayerFileCache
 
     // set the data for a cache element
     //---------------------------------
-    void setCacheContents(String filename, Vector data)
+    void setCacheContents(String filename, Object data)
     {
         CacheEntry entry = (CacheEntry)cache.get(filename);
         entry.data = data;
@@ -1,5 +1,16 @@
 // MapLayers.java implements the container class for all the map layers.
+//
+// The drawing of the layers that can be cached is kept in translucent
+// rasters the size of the display.  Consecutive cached layers in the draw
+// order share one raster, and only MAX_RASTERS rasters are kept, so the
+// memory used doesn't grow with the number of layers.  The rasters are
+// keyed on the area the layers are clipped to without the offset of a
+// drag past the edge of the scroll area.  While dragging, a raster is
+// copied shifted by the drag offset and only the strips it uncovers are
+// drawn from the layers.  A raster drawn at reduced quality is redrawn
+// when full quality is restored.
 //--------------------------------------------------------------------------
+import java.awt.AlphaComposite;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
@@ -7,8 +18,14 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.GridLayout;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Vector;
 import javax.swing.JFrame;
 import javax.swing.JButton;
 import javax.swing.JColorChooser;
@@ -38,6 +55,26 @@ public class MapLayers implements Runnable, WorkMonitor, MapLayerLoadingCallback
     private boolean areLayersValid; // flag to indicate map layers are valid
                                     // for drawing
 
+    // area the layers were last clipped to, without the drag offset.  The
+    // cached layer drawings are discarded when it changes.
+    private Point clipUL;           // upper left corner (null if not clipped)
+    private int clipPixelSize;      // pixel size
+    private int clipProjCode;       // projection code
+    private Dimension clipSize;     // size of the display
+
+    // most rasters to keep for the cached layer drawings
+    private static final int MAX_RASTERS = 2;
+
+    // cached drawing of a run of consecutive layers in the draw order
+    private class LayerRaster
+    {
+        BufferedImage image;    // drawing of the layers
+        int[] layerIndexes;     // indexes of the layers drawn in it
+        int[] versions;         // drawing versions of the layers when drawn
+        boolean reduced;        // flag that it was drawn at reduced quality
+    }
+    private LayerRaster[] rasters = new LayerRaster[MAX_RASTERS];
+
     // cached values from other objects that are used in the thread to load
     // the map layers
     private int projCode;   // the current projection code
@@ -565,8 +602,6 @@ public class MapLayers implements Runnable, WorkMonitor, MapLayerLoadingCallback
         if (ul == null)
             return;
 
-        needClipping = false;
-
         // get the current projection
         // FIXME - instead of getting this here, should probably save it
         // when load is called and use that
@@ -574,11 +609,29 @@ public class MapLayers implements Runnable, WorkMonitor, MapLayerLoadingCallback
         int pixelSize = imagePane.md.pixelSize;
         Dimension dispSize = imagePane.getSize();
 
+        // the cached drawings are still good if the area hasn't changed and
+        // the layers haven't been loaded since the last clip.  The drag
+        // offset is left out since the rasters are shifted by it instead.
+        Point rasterUL = imagePane.getUpperLeftCorner(false);
+        boolean areaChanged = needClipping || !rasterUL.equals(clipUL)
+                || (pixelSize != clipPixelSize) || (projCode != clipProjCode)
+                || !dispSize.equals(clipSize);
+        needClipping = false;
+
         for (int ii = 0; ii < layers.length; ii++)
         {
             if (layers[ii].isLayerOn())
+            {
                 layers[ii].clip(ul, pixelSize, dispSize, proj);
+                if (areaChanged)
+                    layers[ii].invalidateRaster();
+            }
         }
+
+        clipUL = rasterUL;
+        clipPixelSize = pixelSize;
+        clipProjCode = projCode;
+        clipSize = dispSize;
     }
 
     // The findFeatureName searches the visible map layers to see if any of
@@ -652,23 +705,168 @@ public class MapLayers implements Runnable, WorkMonitor, MapLayerLoadingCallback
                 clip();
 
             // loop through each map layers
-            for (int type = 0; type < layers.length; type++)
+            int rasterCount = 0;
+            int type = 0;
+            while (type < layers.length)
             {
                 // determine which type to draw on this pass
                 int currTypeDrawing = drawOrder[type];
+                type++;
 
-                // skip this layer if it isn't turned on
-                if (!layers[currTypeDrawing].isLayerOn())
+                // skip this layer if it isn't drawn
+                if (!isDrawn(currTypeDrawing))
                     continue;
 
-                // check if the extra map layers shouldn't be drawn
-                if ((currTypeDrawing >= normalLayerCount) 
-                    && disableExtraLayerDrawing)
+                // draw the layer directly if it can't be cached or all the
+                // rasters are in use
+                if (!layers[currTypeDrawing].canCacheDrawing()
+                    || (rasterCount >= MAX_RASTERS))
+                {
+                    layers[currTypeDrawing].draw(g);
                     continue;
+                }
 
-                layers[currTypeDrawing].draw(g);
+                // collect the run of cached layers that follow it, skipping
+                // the layers that aren't drawn
+                int[] run = new int[layers.length];
+                int runLength = 0;
+                run[runLength++] = currTypeDrawing;
+                while (type < layers.length)
+                {
+                    int next = drawOrder[type];
+                    if (isDrawn(next))
+                    {
+                        if (!layers[next].canCacheDrawing())
+                            break;
+                        run[runLength++] = next;
+                    }
+                    type++;
+                }
+                int[] layerIndexes = new int[runLength];
+                System.arraycopy(run, 0, layerIndexes, 0, runLength);
+
+                drawRaster(g, rasterCount, layerIndexes);
+                rasterCount++;
             }
+
+            // release the rasters no longer used
+            for (int i = rasterCount; i < MAX_RASTERS; i++)
+                rasters[i] = null;
         }
+        else
+        {
+            for (int i = 0; i < MAX_RASTERS; i++)
+                rasters[i] = null;
+        }
+    }
+
+    // helper method to return whether a layer is drawn by paint
+    //----------------------------------------------------------
+    private boolean isDrawn(int index)
+    {
+        if (!layers[index].isLayerOn())
+            return false;
+
+        // check if the extra map layers shouldn't be drawn
+        return (index < normalLayerCount) || !disableExtraLayerDrawing;
+    }
+
+    // helper method to draw a run of cached layers using a raster, drawing
+    // the layers into the raster first if it is stale.  The raster isn't
+    // redrawn during a drag since the layers are clipped to the dragged
+    // area, so the layers are drawn directly in that case.
+    //---------------------------------------------------------------------
+    private void drawRaster(Graphics g, int rasterIndex, int[] layerIndexes)
+    {
+        Point drag = imagePane.getDragOffset();
+        boolean dragging = (drag.x != 0) || (drag.y != 0);
+        Dimension size = clipSize;
+        if ((size == null) || (size.width <= 0) || (size.height <= 0))
+        {
+            drawLayers(g, layerIndexes);
+            return;
+        }
+
+        LayerRaster raster = rasters[rasterIndex];
+        if (raster == null)
+        {
+            raster = new LayerRaster();
+            rasters[rasterIndex] = raster;
+        }
+        if ((raster.image == null) || (raster.image.getWidth() != size.width)
+            || (raster.image.getHeight() != size.height))
+        {
+            raster.image = null;
+            raster.layerIndexes = null;
+        }
+
+        // check whether the raster still holds the current drawing of the
+        // same layers
+        boolean reduced = RenderQuality.isReduced(g);
+        boolean valid = (raster.image != null) && !(raster.reduced && !reduced)
+                && Arrays.equals(layerIndexes, raster.layerIndexes);
+        for (int i = 0; valid && (i < layerIndexes.length); i++)
+        {
+            valid = (raster.versions[i]
+                     == layers[layerIndexes[i]].getDrawingVersion());
+        }
+
+        if (!valid)
+        {
+            if (dragging)
+            {
+                drawLayers(g, layerIndexes);
+                return;
+            }
+
+            if (raster.image == null)
+            {
+                raster.image = new BufferedImage(size.width, size.height,
+                                                 BufferedImage.TYPE_INT_ARGB);
+            }
+            Graphics2D rg = raster.image.createGraphics();
+            Object quality = ((Graphics2D)g).getRenderingHint(
+                                            RenderingHints.KEY_RENDERING);
+            rg.setRenderingHint(RenderingHints.KEY_RENDERING, quality);
+            rg.setComposite(AlphaComposite.Clear);
+            rg.fillRect(0, 0, size.width, size.height);
+            rg.setComposite(AlphaComposite.SrcOver);
+            drawLayers(rg, layerIndexes);
+            rg.dispose();
+
+            raster.layerIndexes = layerIndexes;
+            raster.versions = new int[layerIndexes.length];
+            for (int i = 0; i < layerIndexes.length; i++)
+            {
+                raster.versions[i]
+                    = layers[layerIndexes[i]].getDrawingVersion();
+            }
+            raster.reduced = reduced;
+        }
+
+        // copy the raster, shifted by the drag offset, and draw the strips
+        // it uncovers from the layers
+        int x = -drag.x;
+        int y = drag.y;
+        g.drawImage(raster.image, x, y, null);
+        Vector strips = ImagePane.getUncoveredStrips(x, y, size.width,
+                                                     size.height);
+        for (int i = 0; i < strips.size(); i++)
+        {
+            Rectangle strip = (Rectangle)strips.elementAt(i);
+            Graphics sg = g.create();
+            sg.clipRect(strip.x, strip.y, strip.width, strip.height);
+            drawLayers(sg, layerIndexes);
+            sg.dispose();
+        }
+    }
+
+    // helper method to draw a list of layers directly
+    //------------------------------------------------
+    private void drawLayers(Graphics g, int[] layerIndexes)
+    {
+        for (int i = 0; i < layerIndexes.length; i++)
+            layers[layerIndexes[i]].draw(g);
     }
 }
 
@@ -1,9 +1,12 @@
 // Metadata class for maintaining the metadata for a single scene
 // as read from the TOC data line
 //---------------------------------------------------------------
+import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.Hashtable;
 import java.util.StringTokenizer;
 import java.lang.Math;
 
@@ -20,28 +23,37 @@ public class Metadata
     int cloudCover;     // cloud cover percentage
     int browseNumber;   // browse number for sensors that have multiple browse
     int downloadFileSize; // file size if the scene is downloadable
-    int[] quality;      // array of quality values for this scene 
+    int[] quality;      // array of quality values for this scene (shared
+                        // between scenes with the same values, so it must
+                        // not be modified)
     String dataVersion; // data version for sensors that have data versions
     String entityID;    // entity ID for ordering (usually scene ID)
     String secondaryID; // entity ID for the MRLC and MODIS Datasets
     String projectName; // project name (optional)
-    int[] sampOffset;   // sample offset to data in this scene (ul,ur,lr,ll)
-    int[] lineOffset;   // line offset to data in this scene (ul,ur,lr,ll)
-    Point centerXY;     // scene center X/Y coordinate
     Polygon screenLocation; // location on the screen for this scene - only
                             // valid for some sensors
     Image image;        // image for this scene if loaded
     int imageRes;       // resolution of image
+    Rectangle imageRegion; // part of the full image the image holds, in
+                        // display pixels from its upper left corner (null
+                        // if the image is the whole image)
+    Dimension imageFullSize; // size of the whole image in display pixels
+                        // (null if the image is the whole image)
     String lookAngle;   // angle of the image
     String level1;      // Level 1 Product name
     boolean isDownloadable; // true if this scene is directly downloadable
                         // Basically, a shortcut for downloadFileSize > 0
     boolean visible;    // flag that this scene is visible (if false, it has
                         // been filtered out due to temporary constraints).
-                        // Basically, a shortcut for filterFlags == 0
-    private int filterFlags; // integer to hold a set of bit flags indicating 
-                        // whether the scene has been filtered out due to
-                        // any number of conditions.
+                        // Basically, a shortcut for the scene's filter
+                        // flags in the scene store being zero
+    private SceneStore store; // store holding the offsets, scene center,
+                        // and filter flags for this scene (null if the
+                        // scene isn't attached to a store)
+    private int storeIndex; // index of this scene in the store
+    private int[] detachedValues; // offsets, scene center, and filter flags
+                        // of a scene that isn't attached to a store (laid
+                        // out as described in SceneStore, null if attached)
     private Sensor sensor; // sensor for this scene
     private LatLong[] sceneCorners; // corners of the scene in lat/long (not
                                     // always filled in)
@@ -52,7 +64,7 @@ public class Metadata
     private static final int[] leapYearMonthToJDate = 
         {0,31,60,91,121,152,182,213,244,274,305,335};
 
-    // bit definitions for the different filters in filterFlags
+    // bit definitions for the different filters in the filter flags
     final static int VIEWPORT_FILTER          = (int) Math.pow(2, 0);
     final static int CLOUD_COVER_FILTER       = (int) Math.pow(2, 1);
     final static int DATE_FILTER              = (int) Math.pow(2, 2);
@@ -67,6 +79,10 @@ public class Metadata
     // high image quality value
     final static int IMAGE_QUALITY_MAX = 9;
 
+    // shared quality arrays, keyed by the quality digits packed into a
+    // Long (most scenes have one of a handful of quality combinations)
+    private static Hashtable qualityCache = new Hashtable();
+
     // Constructor for the metadata object.  the dataLine format is as follows:
     //    date in format YYYYMMDD
     //    julian day of year if julian date available for the sensor
@@ -84,23 +100,47 @@ public class Metadata
     //-------------------------------------------------------------------------
     Metadata(String dataLine, Sensor sensor, int gridCol, int gridRow)
     {
+        this(new TextFields(dataLine), sensor, gridCol, gridRow, null);
+    }
+
+    // Constructor for the metadata object from a text TOC line, adding the
+    // scene to the scene store of the TOC it belongs to
+    //---------------------------------------------------------------------
+    Metadata(String dataLine, Sensor sensor, int gridCol, int gridRow,
+             SceneStore store)
+    {
+        this(new TextFields(dataLine), sensor, gridCol, gridRow, store);
+    }
+
+    // Constructor for the metadata object from the fields of a scene entry
+    // in either a text or binary TOC file.  The fields are in the same order
+    // as the dataLine described above.  The scene is added to the store
+    // passed in (if it is null, the scene isn't attached to a store).
+    //----------------------------------------------------------------------
+    Metadata(TocFields fields, Sensor sensor, int gridCol, int gridRow,
+             SceneStore store)
+    {
+        this.store = store;
+        if (store != null)
+            storeIndex = store.add(this, null, 0);
+        else
+            detachedValues = new int[SceneStore.DETACHED_SIZE];
         this.sensor = sensor;
         this.gridCol = gridCol;
         this.gridRow = gridRow;
         visible = true;
         isDownloadable = false;
-        StringTokenizer st = new StringTokenizer(dataLine,",");
 
         if (sensor.hasAcqDate)
         {
-            date = Integer.parseInt(st.nextToken());
+            date = fields.nextInt();
             year = date/10000;
             month = (date - year * 10000)/100;
        
             // read the julian date just for sensors that have it in the
             // metadata
             if (sensor.hasJulianDateMetadata)
-                jDate = Integer.parseInt(st.nextToken());
+                jDate = fields.nextInt();
             else
             {
                 // the sensor doesn't have the julian date, so calculate it
@@ -123,59 +163,62 @@ public class Metadata
         }
         if (sensor.hasUpperLeftInToc)
         {
-            ulX = Integer.parseInt(st.nextToken());
-            ulY = Integer.parseInt(st.nextToken());
+            ulX = fields.nextInt();
+            ulY = fields.nextInt();
         }
         if (sensor.hasCloudCover)
-            cloudCover = Integer.parseInt(st.nextToken());
+            cloudCover = fields.nextInt();
         else
             cloudCover = 0;
         quality = null;
         
         if (sensor.hasSecondaryIDMetadata)
         {
-            entityID = st.nextToken();
-            secondaryID = st.nextToken();
+            entityID = fields.nextString();
+            secondaryID = fields.nextString();
         }
         else
         {
-            entityID = st.nextToken();
+            entityID = fields.nextString();
         }
         if (sensor.numQualityValues > 0)
         {
-            quality = new int[sensor.numQualityValues];
+            // pack the quality digits into a key for the shared quality
+            // arrays (negative digits from bad values are kept as 10 to
+            // keep them distinct)
+            long key = 1;
             for (int i = 0; i < sensor.numQualityValues; i++)
             {
-                String qual = st.nextToken().trim();
-                quality[i] = Character.digit(qual.charAt(0),16);
-                if (quality[i] > IMAGE_QUALITY_MAX)
-                    quality[i] = IMAGE_QUALITY_MAX;
+                int qual = fields.nextHexDigit();
+                if (qual > IMAGE_QUALITY_MAX)
+                    qual = IMAGE_QUALITY_MAX;
+                else if (qual < 0)
+                    qual = 10;
+                key = key * 11 + qual;
             }
+            quality = getSharedQuality(key, sensor.numQualityValues);
         }
         if (sensor.hasProjectName)
-            projectName = st.nextToken();
+            projectName = fields.nextString();
         else
             projectName = null;
 
         if (!sensor.hasConstantOffsets)
         {
-            // read the offsets to the data in the image 
-            sampOffset = new int[4];
-            lineOffset = new int[4];
-
-            for (int i = 0; i < 4; i++)
-            {
-                sampOffset[i] = Integer.parseInt(st.nextToken());
-                lineOffset[i] = Integer.parseInt(st.nextToken());
-            }
+            // read the offsets to the data in the image directly into the
+            // scene store
+            int[] offsets = getOffsetArray();
+            int base = getOffsetBase();
+            for (int i = 0; i < SceneStore.OFFSETS_PER_SCENE; i++)
+                offsets[base + i] = fields.nextInt();
         }
 
         // get the browse number
         if (sensor.hasMultipleBrowse)
         {
-            if (st.hasMoreTokens())
+            if (fields.hasMoreFields())
             {
-                browseNumber = Integer.parseInt(st.nextToken());
+                browseNumber = fields.nextInt();
             }
             else
             {
@@ -191,36 +234,36 @@ public class Metadata
         if (sensor.isDownloadable)
         {
             // check whether there is more data on the input line
-            if (st.hasMoreTokens())
+            if (fields.hasMoreFields())
             {
-                downloadFileSize = Integer.parseInt(st.nextToken()); 
+                downloadFileSize = fields.nextInt(); 
                 if (downloadFileSize > 0)
                     isDownloadable = true;
             }
         }
         
-        // create new string object for the look angle
-        lookAngle = new String();
+        // default to an empty look angle
+        lookAngle = "";
         if (sensor.hasLookAngle)
         {
             // check if the look angle is there (if the value is null in the
             // database, there will be no value in the TOC line)
-            if (st.hasMoreTokens())
+            if (fields.hasMoreFields())
             {
-                lookAngle = new String(st.nextToken());
+                lookAngle = fields.nextString();
             }
         }
 
-        // create new string object for the Level 1 product
-        level1 = new String();
+        // default to an empty Level 1 product
+        level1 = "";
         if (sensor.hasLevel1)
         {
             // check if the level 1 product is there (may have spaces, BTW)
             // (this field is the  most-recently added so will be at the end
             // if this scene has been updated since the field was added)
-            if (st.hasMoreTokens())
+            if (fields.hasMoreFields())
             {
-                String temp = new String (st.nextToken());
+                String temp = fields.nextString();
                 if (!temp.equalsIgnoreCase("PR"))
                 {
                     level1 = temp;
@@ -232,9 +275,181 @@ public class Metadata
         if (!sensor.hasUpperLeftInToc || sensor.hasConstantOffsets)
             sensor.completeMetadata(this);
 
+        // save the values scanned by the filters and date navigation in the
+        // scene store
+        if (store != null)
+        {
+            store.date[storeIndex] = date;
+            store.year[storeIndex] = year;
+            store.month[storeIndex] = month;
+            store.jDate[storeIndex] = jDate;
+            store.cloudCover[storeIndex] = cloudCover;
+        }
+
         sceneCorners = null;
     }
 
+    // method to return the shared quality array for a packed quality key
+    //-------------------------------------------------------------------
+    private static int[] getSharedQuality(long key, int numValues)
+    {
+        Long cacheKey = Long.valueOf(key);
+        int[] qual = (int[])qualityCache.get(cacheKey);
+        if (qual == null)
+        {
+            // unpack the digits (the last digit is the lowest order one)
+            qual = new int[numValues];
+            for (int i = numValues - 1; i >= 0; i--)
+            {
+                qual[i] = (int)(key % 11);
+                if (qual[i] == 10)
+                    qual[i] = -1;
+                key /= 11;
+            }
+            qualityCache.put(cacheKey, qual);
+        }
+        return qual;
+    }
+
+    // method to attach this scene to a new scene store, copying its values
+    // from the store it is currently attached to (or its detached values)
+    //----------------------------------------------------------------------
+    void attach(SceneStore newStore)
+    {
+        if (store != null)
+            storeIndex = newStore.add(this, store, storeIndex);
+        else
+        {
+            storeIndex = newStore.addDetached(this, detachedValues);
+            detachedValues = null;
+        }
+        store = newStore;
+    }
+
+    // helper methods to return the array holding the offsets of the scene
+    // and the index of its first offset in the array
+    //--------------------------------------------------------------------
+    private int[] getOffsetArray()
+    {
+        return (store != null) ? store.offsets : detachedValues;
+    }
+    private int getOffsetBase()
+    {
+        return (store != null) ? storeIndex * SceneStore.OFFSETS_PER_SCENE
+                               : SceneStore.DETACHED_OFFSETS;
+    }
+
+    // method to set the offsets to the data in the image for sensors that
+    // have constant offsets.  The offsets are in UL, UR, LR, LL order.
+    //--------------------------------------------------------------------
+    void setOffsets(int[] sampOffset, int[] lineOffset)
+    {
+        int[] offsets = getOffsetArray();
+        int base = getOffsetBase();
+        for (int i = 0; i < 4; i++)
+        {
+            offsets[base + i * 2] = sampOffset[i];
+            offsets[base + i * 2 + 1] = lineOffset[i];
+        }
+    }
+
+    // methods to return the sample and line offsets to the data in the 
+    // image for a corner (0-3 for UL, UR, LR, LL)
+    //-----------------------------------------------------------------
+    public int getSampOffset(int corner)
+    {
+        return getOffsetArray()[getOffsetBase() + corner * 2];
+    }
+    public int getLineOffset(int corner)
+    {
+        return getOffsetArray()[getOffsetBase() + corner * 2 + 1];
+    }
+
+    // methods to return the scene center X/Y coordinate
+    //--------------------------------------------------
+    public int getCenterX()
+    {
+        return (store != null) ? store.centerX[storeIndex]
+                    : detachedValues[SceneStore.DETACHED_CENTER_X];
+    }
+    public int getCenterY()
+    {
+        return (store != null) ? store.centerY[storeIndex]
+                    : detachedValues[SceneStore.DETACHED_CENTER_Y];
+    }
+    public Point getCenterXY()
+    {
+        return new Point(getCenterX(), getCenterY());
+    }
+
+    // helper method to set the scene center X/Y coordinate
+    //-----------------------------------------------------
+    private void setCenterXY(int x, int y)
+    {
+        if (store != null)
+        {
+            store.centerX[storeIndex] = x;
+            store.centerY[storeIndex] = y;
+        }
+        else
+        {
+            detachedValues[SceneStore.DETACHED_CENTER_X] = x;
+            detachedValues[SceneStore.DETACHED_CENTER_Y] = y;
+        }
+    }
+
+    // helper method to set or clear a filter flag for the scene, keeping the
+    // visible flag up to date
+    //-----------------------------------------------------------------------
+    private void setFilter(int flag, boolean filtered)
+    {
+        if (store != null)
+        {
+            setFilter(flag, filtered);
+            return;
+        }
+        int flags = detachedValues[SceneStore.DETACHED_FLAGS];
+        if (filtered)
+            flags |= flag;
+        else
+            flags &= ~flag;
+        detachedValues[SceneStore.DETACHED_FLAGS] = flags;
+        visible = (flags == 0);
+    }
+
+    // class to step through the comma separated fields of a text TOC line
+    //--------------------------------------------------------------------
+    private static class TextFields implements TocFields
+    {
+        private StringTokenizer st;
+
+        TextFields(String dataLine)
+        {
+            st = new StringTokenizer(dataLine,",");
+        }
+
+        public boolean hasMoreFields()
+        {
+            return st.hasMoreTokens();
+        }
+
+        public int nextInt()
+        {
+            return Integer.parseInt(st.nextToken());
+        }
+
+        public String nextString()
+        {
+            return st.nextToken();
+        }
+
+        public int nextHexDigit()
+        {
+            String qual = st.nextToken().trim();
+            return Character.digit(qual.charAt(0),16);
+        }
+    }
+
     // copy constructor.  Note that only real metadata items are copied
     // with this constructor.  The purpose for this constructor is to
     // copy only the metadata that might be of interest to the scene
@@ -253,19 +468,15 @@ public class Metadata
         cloudCover = orig.cloudCover;
         browseNumber = orig.browseNumber;
         dataVersion = orig.dataVersion;
-        lookAngle = new String(orig.lookAngle);
+        lookAngle = orig.lookAngle;
         projectName = orig.projectName;
         // keep a reference to the original quality (note that it won't 
         // ever be changed, so keeping a reference to it is okay)
         quality = orig.quality;
-        entityID = new String(orig.entityID);
+        entityID = orig.entityID;
         secondaryID = orig.secondaryID;
-        sampOffset = null;
-        lineOffset = null;
         downloadFileSize = orig.downloadFileSize;
         isDownloadable = orig.isDownloadable;
-        if (orig.centerXY != null)
-            centerXY = new Point(orig.centerXY);
         // keep a reference to the orig.screenLocation (note that it won't
         // ever be changed, so keeping a reference to it is okay)        
         screenLocation = orig.screenLocation;
@@ -273,8 +484,16 @@ public class Metadata
         // on how many images can be allocated at once.
         image = null;
         imageRes = orig.imageRes;
+        imageRegion = null;
+        imageFullSize = null;
+        // the copy isn't attached to a store, so it keeps its own copy of the
+        // offsets, scene center, and filter flags
+        store = null;
+        if (orig.store != null)
+            detachedValues = orig.store.getDetachedValues(orig.storeIndex);
+        else
+            detachedValues = orig.detachedValues.clone();
         visible = false;
-        filterFlags = orig.filterFlags;
         sensor = orig.sensor;
         sceneCorners = orig.sceneCorners;
     }
@@ -298,11 +517,12 @@ public class Metadata
     //-----------------------------------------------------
     public void calculateSceneCenter(double offsetRes)
     {
-        int x = ulX + (int)Math.round(((sampOffset[2] - sampOffset[0])/2 
-                                       + sampOffset[0]) * offsetRes);
-        int y = ulY - (int)Math.round(((lineOffset[2] - lineOffset[0])/2 
-                                       + lineOffset[0]) * offsetRes);
-        centerXY = new Point(x,y);
+        int samp0 = getSampOffset(0);
+        int line0 = getLineOffset(0);
+        setCenterXY(ulX + (int)Math.round(
+                        ((getSampOffset(2) - samp0)/2 + samp0) * offsetRes),
+                    ulY - (int)Math.round(
+                        ((getLineOffset(2) - line0)/2 + line0) * offsetRes));
     }
 
     // method to set the scene lat/long corners using the offsets, the
@@ -318,8 +538,8 @@ public class Metadata
         double offsetRes = sensor.getOffsetResolution();
         for (int index = 0; index < 4; index++)
         {
-            int x = (int)Math.round(ulX + sampOffset[index] * offsetRes);
-            int y = (int)Math.round(ulY - lineOffset[index] * offsetRes);
+            int x = (int)Math.round(ulX + getSampOffset(index) * offsetRes);
+            int y = (int)Math.round(ulY - getLineOffset(index) * offsetRes);
 
             sceneCorners[index] = proj.projToLatLong(x, y);
         }
@@ -372,8 +592,6 @@ public class Metadata
         quality = null;
         entityID = null;
         secondaryID = null;
-        sampOffset = null;
-        lineOffset = null;
         screenLocation = null;
         // Note that the call to flush is needed to really make the 
         // Netscape Java VM really release all the image resources
@@ -397,47 +615,27 @@ public class Metadata
         sensor.showMetadata(this);
     }
 
-    // method to set the visible flag to the correct state based on the 
-    // filter flags
-    //-----------------------------------------------------------------
-    private final void updateVisible()
-    {
-        if (filterFlags == 0)
-            visible = true;
-        else
-            visible = false;
-    }
-
     // method to clear a particular filter flag
     //-----------------------------------------
     public void clearFilter(int flag)
     {
-        filterFlags &= ~flag;
-        updateVisible();
+        setFilter(flag, false);
     }
 
     // method to filter the scene to a viewport
     //-----------------------------------------
     public void filterToViewport(Polygon viewport)
     {
-        if (viewport.contains(centerXY.x,centerXY.y))
-            filterFlags &= ~Metadata.VIEWPORT_FILTER;
-        else
-            filterFlags |= Metadata.VIEWPORT_FILTER;
-
-        updateVisible();
+        setFilter(Metadata.VIEWPORT_FILTER,
+            !viewport.contains(getCenterX(), getCenterY()));
     }
 
     // method to filter the scene to meet a cloud cover restriction
     //-------------------------------------------------------------
     public void filterToCloudCover(int maxCloudCover)
     {
-        if (cloudCover <= maxCloudCover)
-            filterFlags &= ~Metadata.CLOUD_COVER_FILTER;
-        else
-            filterFlags |= Metadata.CLOUD_COVER_FILTER;
-
-        updateVisible();
+        setFilter(Metadata.CLOUD_COVER_FILTER,
+                        cloudCover > maxCloudCover);
     }
 
     // method to filter the scene to a date range.  Note the months are
@@ -449,7 +647,7 @@ public class Metadata
         // if there is no acquisition date, date range cannot be filtered on
         if (!sensor.hasAcqDate)
         {
-            filterFlags &= ~Metadata.DATE_FILTER;
+            setFilter(Metadata.DATE_FILTER, false);
             return;
         }
 
@@ -460,9 +658,9 @@ public class Metadata
         // determine if the range of months crosses the year boundary
         boolean monthsWrapAround = (startMonth > endMonth);
 
+        boolean keep = false;
         if ((year >= startYear) && (year <= endYear))
         {
-            boolean keep = false;
             if (!monthsWrapAround)
             {
                 if ((month >= startMonth) && (month <= endMonth))
@@ -473,15 +671,8 @@ public class Metadata
                 if ((month >= startMonth) || (month <= endMonth))
                     keep = true;
             }
-            if (keep)
-                filterFlags &= ~Metadata.DATE_FILTER;
-            else
-                filterFlags |= Metadata.DATE_FILTER;
         }
-        else
-            filterFlags |= Metadata.DATE_FILTER;
-
-        updateVisible();
+        setFilter(Metadata.DATE_FILTER, !keep);
     }
 
     // method to filter the scene to a gridCol gridRow range.
@@ -491,21 +682,9 @@ public class Metadata
     {
         if (sensor.hasGridColRowFilter)
         {
-            if ((gridCol >= startGridCol) && (gridCol <= endGridCol))
-            {
-                boolean keep = false;
-                if ((gridRow >= startGridRow) && (gridRow <= endGridRow))
-                    keep = true;
-           
-                if (keep)
-                    filterFlags &= ~Metadata.GRID_COL_ROW_FILTER;
-                else
-                    filterFlags |= Metadata.GRID_COL_ROW_FILTER;
-           }
-           else
-               filterFlags |= Metadata.GRID_COL_ROW_FILTER;
-   
-            updateVisible();
+            boolean keep = (gridCol >= startGridCol) && (gridCol <= endGridCol)
+                        && (gridRow >= startGridRow) && (gridRow <= endGridRow);
+            setFilter(Metadata.GRID_COL_ROW_FILTER, !keep);
         }
     }
     
@@ -513,39 +692,23 @@ public class Metadata
     //------------------------------------------------------
     public void filterToSceneList(boolean filterEnabled)
     {
+        boolean filtered = false;
         if (filterEnabled)
-        {
-            if (sensor.sceneList.find(this) != -1)
-                filterFlags &= ~Metadata.SCENE_LIST_FILTER;
-            else
-                filterFlags |= Metadata.SCENE_LIST_FILTER;
-        }
-        else
-        {
-            filterFlags &= ~Metadata.SCENE_LIST_FILTER;
-        }
+            filtered = (sensor.sceneList.find(this) == -1);
 
-        updateVisible();
+        setFilter(Metadata.SCENE_LIST_FILTER, filtered);
     }
 
     // method to filter the scene to based on whether it is downloadable
     //------------------------------------------------------------------
     public void filterToDownloadable(boolean filterEnabled)
     {
+        // Can't filter on downloadable unless sensor is mightBeDownloadable
+        boolean filtered = false;
         if (filterEnabled && sensor.mightBeDownloadable)
-        {
-            if (isDownloadable)
-                filterFlags &= ~Metadata.DOWNLOADABLE_FILTER;
-            else
-                filterFlags |= Metadata.DOWNLOADABLE_FILTER;
-        }
-        else
-        {
-            // Can't filter on downloadable unless sensor is mightBeDownloadable
-            filterFlags &= ~Metadata.DOWNLOADABLE_FILTER;
-        }
+            filtered = !isDownloadable;
 
-        updateVisible();
+        setFilter(Metadata.DOWNLOADABLE_FILTER, filtered);
     }
 
     // method to filter the scene to not visible if Hidden
@@ -553,17 +716,8 @@ public class Metadata
     //------------------------------------------------------
     public void filterToHiddenScene()
     {
-        
-        if (sensor.hiddenSceneList.find(this) != -1)
-        {
-            filterFlags |= Metadata.HIDDEN_SCENE_FILTER;
-        }
-        else
-        {
-            filterFlags &= ~Metadata.HIDDEN_SCENE_FILTER;
-        }
-        
-        updateVisible();
+        setFilter(Metadata.HIDDEN_SCENE_FILTER,
+                        sensor.hiddenSceneList.find(this) != -1);
     }
 
     // method to filter the scene to the user defined area
@@ -571,20 +725,15 @@ public class Metadata
     public void filterToUserArea(boolean filterEnabled, 
                                  UserDefinedAreaDialog userDefinedAreaDialog)
     {
+        boolean filtered = false;
         if (filterEnabled && sensor.hasUserDefinedArea)
         {
-            if (userDefinedAreaDialog.getUserDefinedArea().
-                                                        sceneIntersects(this))
-            {
-                filterFlags &= ~Metadata.USER_DEFINED_AREA_FILTER;
-            }
-            else
-                filterFlags |= Metadata.USER_DEFINED_AREA_FILTER;
+            filtered = !userDefinedAreaDialog.getUserDefinedArea().
+                                                        sceneIntersects(this);
         }
-        else
-            filterFlags &= ~Metadata.USER_DEFINED_AREA_FILTER;
 
-        updateVisible();
+        setFilter(Metadata.USER_DEFINED_AREA_FILTER,
+                        filtered);
     }
 
     // method to filter the scene to visible if meets minimum quality
@@ -594,13 +743,8 @@ public class Metadata
         int qual = getQuality();
         if (qual >= 0)
         {
-            // set filter bit
-            if (qual >= minimumQuality)
-                filterFlags &= ~Metadata.QUALITY_FILTER;
-            else
-                filterFlags |= Metadata.QUALITY_FILTER;
-
-            updateVisible();
+            setFilter(Metadata.QUALITY_FILTER,
+                            qual < minimumQuality);
         }
     }
 
@@ -612,13 +756,9 @@ public class Metadata
         {
             // if the dataVersion is "All" or the data version matches,
             // the scene is not filtered out
-            if ((dataVersion.equals("All"))
-                || (this.dataVersion.equals(dataVersion)))
-                filterFlags &= ~Metadata.DATA_VERSION_FILTER;
-            else
-                filterFlags |= Metadata.DATA_VERSION_FILTER;
-
-            updateVisible();
+            setFilter(Metadata.DATA_VERSION_FILTER,
+                            !(dataVersion.equals("All")
+                              || this.dataVersion.equals(dataVersion)));
         }
     }
 
@@ -42,12 +42,8 @@ class ModisSceneFilter implements SceneFilter
         {
             // go forward one date, skipping scenes that are not visible.
             // If it is the last date, don't do anything
-            int next = cell.currentDateIndex + 1;
-            while ((next < cell.numImg) && !cell.scenes[next].visible)
-            {
-                next++;
-            }
-            if (next < cell.numImg) 
+            int next = cell.store.nextVisible(cell.currentDateIndex + 1);
+            if (next != -1) 
             {
                 md.drawNewDate(cell.gridCol,cell.gridRow,next);
             }
@@ -77,11 +73,7 @@ class ModisSceneFilter implements SceneFilter
         {
             // go back one date, skipping over scenes that are not visible.
             // When at the first scene, don't move any further
-            int next = cell.currentDateIndex - 1;
-            while ((next >= 0) && !cell.scenes[next].visible)
-            {
-                next--;
-            }
+            int next = cell.store.previousVisible(cell.currentDateIndex - 1);
             if (next >= 0)
             {
                 md.drawNewDate(cell.gridCol,cell.gridRow,next);
@@ -118,9 +110,9 @@ class ModisSceneFilter implements SceneFilter
         for (int index = cell.currentDateIndex + 1; index <= lastFilteredDate; 
              index++)
         {
-            if (cell.scenes[index].visible)
+            if (cell.store.isVisible(index))
             {
-                int date = cell.scenes[index].date;
+                int date = cell.store.date[index];
                 if ((date >= targetDate) && (date < (targetDate + 100)))
                 {
                     newIndex = index;
@@ -136,9 +128,9 @@ class ModisSceneFilter implements SceneFilter
         {
             for (int index = 0; index >= lastFilteredDate; index++)
             {
-                if (cell.scenes[index].visible)
+                if (cell.store.isVisible(index))
                 {
-                    int date = cell.scenes[index].date;
+                    int date = cell.store.date[index];
                     if ((date >= targetDate) && (date < (targetDate + 100)))
                     {
                         newIndex = index;
@@ -155,10 +147,10 @@ class ModisSceneFilter implements SceneFilter
             // look for the target date or the next one after it
             for (int index = 0; index <= lastFilteredDate; index++)
             {
-                if (cell.scenes[index].visible)
+                if (cell.store.isVisible(index))
                 {
                     newIndex = index;
-                    if (cell.scenes[index].date >= targetDate)
+                    if (cell.store.date[index] >= targetDate)
                         break;
                 }
             }
@@ -188,34 +180,22 @@ class ModisSceneFilter implements SceneFilter
 
         // look through the list of scenes from first to last until one is 
         // found that is visible to establish the first date available
-        for (int index = 0; index < cell.numImg; index++)
-        {
-            if (cell.scenes[index].visible)
-            {
-                firstFilteredDate = index;
-                break;
-            }
-        }
+        int first = cell.store.nextVisible(0);
+        if (first != -1)
+            firstFilteredDate = first;
 
         // look through the list of scenes from last until the first that
         // passed the filter to find one that is visible to establish the last
         // date available
-        lastFilteredDate = 0;
-        for (int index = cell.numImg - 1; index >= firstFilteredDate; index--)
-        {
-            if (cell.scenes[index].visible)
-            {
-                lastFilteredDate = index;
-                break;
-            }
-        }
+        int last = cell.store.previousVisible(cell.numImg - 1);
+        lastFilteredDate = (last != -1) ? last : 0;
 
         // find the first and last year available in the data
         firstDate = 100000000;
         lastDate = 0;
         for (int index = 0; index < cell.numImg; index++)
         {
-            int date = cell.scenes[index].date;
+            int date = cell.store.date[index];
             if (date < firstDate)
                 firstDate = date;
             if (date > lastDate)
@@ -252,13 +232,9 @@ class ModisSceneFilter implements SceneFilter
     public boolean isNextDateAvailable(Metadata scene)
     {
         TOC cell = md.getCellForScene(scene);
-        for (int index = cell.currentDateIndex + 1; index < cell.numImg; 
-             index++)
-        {
-            if (cell.scenes[index].visible)
-                return true;
-        }
-        return false;
+        if (cell.numImg < 1)
+            return false;
+        return (cell.store.nextVisible(cell.currentDateIndex + 1) != -1);
     }
 
     // returns true if another date is available before the current date for
@@ -267,10 +243,9 @@ class ModisSceneFilter implements SceneFilter
     public boolean isPrevDateAvailable(Metadata scene)
     {
         TOC cell = md.getCellForScene(scene);
-        for (int index = cell.currentDateIndex - 1; index >= 0; index--)
-            if (cell.scenes[index].visible)
-                return true;
-        return false;
+        if (cell.numImg < 1)
+            return false;
+        return (cell.store.previousVisible(cell.currentDateIndex - 1) != -1);
     }
 
     // jumps to the first date that hasn't been filtered
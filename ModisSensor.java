@@ -143,8 +143,7 @@ public class ModisSensor extends Sensor
     public void completeMetadata(Metadata scene)
     {
         // set the line and sample offsets
-        scene.lineOffset = lineOffsets;
-        scene.sampOffset = sampOffsets;
+        scene.setOffsets(sampOffsets, lineOffsets);
 
         // Finding the 3rd and 4th "." and pulling only the version number out
         // to create the orderID that needs to be passed in the URL.
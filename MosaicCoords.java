@@ -380,9 +380,9 @@ public class MosaicCoords
                     // resolution below the full resolution size, and convert
                     // from meters to pixels
                     tempX[i] = (int)Math.round((sceneSamp + 
-                        scene.sampOffset[i] * offsetRes) / pixelSize);
+                        scene.getSampOffset(i) * offsetRes) / pixelSize);
                     tempY[i] = (int)Math.round((sceneLine +
-                        scene.lineOffset[i] * offsetRes) / pixelSize);
+                        scene.getLineOffset(i) * offsetRes) / pixelSize);
                 }
 
                 // set the scene's polygon
@@ -401,6 +401,19 @@ public class MosaicCoords
             return null;
     }
 
+    // method to copy the current upper left corner coordinate in X,Y into
+    // a point kept by the caller.  Returns false (leaving the point
+    // unchanged) if the corner isn't valid.
+    //--------------------------------------------------------------------
+    public boolean getUpperLeftCorner(Point corner)
+    {
+        if (!displayedULValid)
+            return false;
+        corner.x = displayedUL.x;
+        corner.y = displayedUL.y;
+        return true;
+    }
+
     // method to update the displayed upper left corner coordinate
     //------------------------------------------------------------
     public void updateDisplayedUL(int x, int y, boolean valid)
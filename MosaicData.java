@@ -38,6 +38,11 @@ import java.net.URL;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import javax.swing.JOptionPane;
 
 public class MosaicData extends Observable implements Runnable, WorkMonitor
@@ -120,12 +125,16 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
     private static final int TARGETXY_NOTIFY = 1;
     private static final int DISPLAY_MODE_CHANGE_NOTIFY = 2;
 
+    // total number of scenes in the cells before the filters are applied to
+    // the cells in parallel
+    private static final int PARALLEL_FILTER_SCENES = 20000;
+
     private Thread loaderThread;     // thread for loading TOC files
     private Object loadLock;         // mutex for exclusive access
     private boolean killThread;      // flag to indicate the thread should
                                      // be killed
-    private boolean isLoading;       // TOC files are loading flag
-    private boolean isLoadCancelled; // cancel TOC files loading flag
+    private volatile boolean isLoading; // TOC files are loading flag
+    private volatile boolean isLoadCancelled; // cancel TOC files loading flag
     private TOC[] loadingMosaicCells;// array of TOCs being loaded by the load
                                      // thread
     private int loadingActiveCellIndex; // index into mosaicCells that should 
@@ -155,6 +164,30 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
                                      // swath when scrolling up and down.
     private int numTocsToLoad;       // total number of TOC files to load
     private int currTocLoading;      // current TOC loading of total number
+    private int tocLoaderCount = 4;  // number of TOC files to fetch at once
+    private ExecutorService tocFetchPool; // pool of threads fetching TOC files
+    private volatile boolean earlyCellsReady; // flag to indicate the active
+                                     // cell has loaded before the rest of the
+                                     // cells and can be displayed early
+    private boolean[] publishedCells;// flags for the entries of
+                                     // loadingMosaicCells that are complete
+                                     // when earlyCellsReady is set
+    private boolean partialTocArrayActive; // flag that the cells published
+                                     // early have been activated and the
+                                     // rest of the cells are still loading
+    private TocCache tocCache = new TocCache(50000, 900); // TOCs that have
+                                     // been scrolled out of the mosaic
+    private ExecutorService filterPool; // pool of threads for filtering
+                                     // cells with a large number of scenes
+    private TocPrefetcher tocPrefetcher; // reads the TOCs beyond the edge of
+                                     // the mosaic in the scroll direction
+    private int scrollColStep;       // grid column and row direction (-1, 0,
+    private int scrollRowStep;       // or 1) of the last scroll command
+    private int prefetchColStep;     // grid column and row direction to
+    private int prefetchRowStep;     // prefetch in when the load completes
+    private int prefetchDates = 4;   // number of dates before and after the
+                                     // selected date in the active cell to
+                                     // prefetch images for
     private boolean isCalledFromScrolledData;// flag indicating if display 
                                      //was scrolled
     private Metadata targetDateScene;// current selected scene
@@ -203,6 +236,7 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
 
         // create the image loader
         imageLoader = new ImageLoader(parent,paneIn);
+        tocPrefetcher = new TocPrefetcher(parent,this);
 
         // create the date cache for the last 20 scenes changed from the 
         // default date
@@ -799,11 +833,13 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
         areImagesLoading = false;
         mapLayers.cancelLoad();
 
-        // flush the date cache when the sensor is switched
+        // flush the date cache and stop prefetching TOCs for the old sensor
+        // when the sensor is switched
         if (currSensor != newSensor)
         {
             dateCache.flush();
             zOrderList.empty();
+            tocPrefetcher.cancel();
         }
 
         // convert the current grid location to lat/long location in case the 
@@ -1137,6 +1173,8 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
             scene.image.flush();
             scene.image = null;
             scene.imageRes = -1;
+            scene.imageRegion = null;
+            scene.imageFullSize = null;
         }
     }
 
@@ -1311,10 +1349,20 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
             if (cell.valid)
             {
                 Metadata scene = cell.scenes[cell.currentDateIndex];
-                if (scene.image != null)
+                if ((scene.image != null) && (scene.imageRes == pixelSize))
                 {
-                    width = scene.image.getWidth(null);
-                    height = scene.image.getHeight(null);
+                    // use the size of the whole image if only part of it
+                    // is loaded
+                    if (scene.imageFullSize != null)
+                    {
+                        width = scene.imageFullSize.width;
+                        height = scene.imageFullSize.height;
+                    }
+                    else
+                    {
+                        width = scene.image.getWidth(null);
+                        height = scene.image.getHeight(null);
+                    }
                 }
             }
         }
@@ -1362,10 +1410,34 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
             areImagesLoading = true;
             applet.updateBusyIndicators();
             imageLoader.loadImages(zOrderList,cellsToDisplay,pixelSize,
-                                   currSensor);
+                                   currSensor,getDatePrefetchScenes());
         }
     } 
 
+    // method to load another part of the image in single scene mode when
+    // the part loaded no longer covers the visible area.  Called from the
+    // GUI thread when the display is scrolled.
+    //--------------------------------------------------------------------
+    public void checkImageRegion()
+    {
+        if ((cellsToDisplay != Sensor.SINGLE_SCENE) || isBusy()
+            || tocChangePending || imageLoader.isBusy())
+        {
+            return;
+        }
+
+        Metadata scene = getCurrentScene();
+        if ((scene != null) && (scene.image != null)
+            && (scene.imageRes == pixelSize)
+            && !ImageLoader.isRegionCovered(scene, pane.getVisibleArea()))
+        {
+            // the scroll position is the user's, so don't move it when the
+            // load completes
+            notifyType = MosaicData.NORMAL_NOTIFY;
+            loadScenes();
+        }
+    }
+
     // method used to update mosaic coordinates and find min size
     //-----------------------------------------------------------
     private void mosaicCoordsUpdate()
@@ -1381,6 +1453,15 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
     //------------------------------------------------
     public void checkForCompletedLoad()
     {
+        // if the active cell arrived ahead of the rest of the TOC files,
+        // display it while the remaining cells load
+        if (earlyCellsReady)
+        {
+            earlyCellsReady = false;
+            if (tocChangePending && !loadCompleted)
+                activatePartialTocArray();
+        }
+
         // if a TOC load completed, follow through with activating the 
         // new TOC files
         if (loadCompleted)
@@ -1389,7 +1470,10 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
             if (tocChangePending)
             {
                 tocChangePending = false;
-                activateNewTocArray();
+                if (partialTocArrayActive)
+                    activateRemainingTocArray();
+                else
+                    activateNewTocArray();
             }
             else
             {
@@ -1573,6 +1657,10 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
         {
             if (canMoveToMapArea(newGridCol, newGridRow))
             {
+                // remember the direction so the cells beyond the new
+                // mosaic in the same direction can be prefetched
+                scrollColStep = Integer.signum(rightSign * (right - left));
+                scrollRowStep = Integer.signum(downSign * (down - up));
                 scrollData(newGridCol,newGridRow,newSubCol,newSubRow,false,
                     true,false);
             }
@@ -1664,6 +1752,12 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
             loadingActiveCellIndex = activeCell;
             loadingPreserveZOrder = preserveZOrder;
 
+            // any early display signalled for the previous load no longer
+            // applies
+            earlyCellsReady = false;
+            publishedCells = null;
+            partialTocArrayActive = false;
+
             // set the other flags for tracking the state
             tocChangePending = true;
             isLoadCancelled = false;
@@ -1683,6 +1777,7 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
     {
         cancelLoad();
         imageLoader.killThread();
+        tocPrefetcher.killThread();
         synchronized(loadLock)
         {
             killThread = true;
@@ -1690,6 +1785,288 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
         }
     }
 
+    // method to set the number of TOC files fetched at the same time.  It
+    // needs to be called before the first TOC load is started.
+    //----------------------------------------------------------------------
+    public void setTocLoaderCount(int count)
+    {
+        if (count < 1)
+            count = 1;
+        tocLoaderCount = count;
+    }
+
+    // method to return the number of TOC files fetched at the same time
+    //------------------------------------------------------------------
+    public int getTocLoaderCount()
+    {
+        return tocLoaderCount;
+    }
+
+    // method to return whether the TOC load in progress has been
+    // cancelled.  Used by sensors that read a TOC in several parts to stop
+    // starting new parts.
+    //---------------------------------------------------------------------
+    public boolean isTocLoadCancelled()
+    {
+        return isLoadCancelled;
+    }
+
+    // method to set the limits for the cache of TOCs that have been
+    // scrolled out of the mosaic.  A maxScenes of zero disables the cache.
+    //---------------------------------------------------------------------
+    public void setTocCacheLimits(int maxScenes, int maxAgeSeconds)
+    {
+        tocCache.setLimits(maxScenes, maxAgeSeconds);
+    }
+
+    // method to set the number of dates before and after the selected date
+    // in the active cell to prefetch images for.  Zero disables the
+    // prefetch.
+    //--------------------------------------------------------------------
+    public void setDatePrefetchCount(int dates)
+    {
+        prefetchDates = dates;
+    }
+
+    // helper method to return the visible scenes for the dates before and
+    // after the selected date in the active cell, nearest dates first, so
+    // the image loader can prefetch their images.  Returns null if there
+    // is nothing to prefetch.
+    //---------------------------------------------------------------------
+    private Metadata[] getDatePrefetchScenes()
+    {
+        if ((prefetchDates <= 0) || (activeCellIndex < 0)
+            || (activeCellIndex >= mosaicCells.length))
+        {
+            return null;
+        }
+        TOC cell = mosaicCells[activeCellIndex];
+        if (!cell.valid || (cell.numImg < 2))
+            return null;
+
+        Vector scenes = new Vector();
+        int next = cell.currentDateIndex;
+        int prev = cell.currentDateIndex;
+        for (int i = 0; i < prefetchDates; i++)
+        {
+            if (next != -1)
+            {
+                next = cell.store.nextVisible(next + 1);
+                if (next != -1)
+                    scenes.addElement(cell.scenes[next]);
+            }
+            if (prev != -1)
+            {
+                prev = cell.store.previousVisible(prev - 1);
+                if (prev != -1)
+                    scenes.addElement(cell.scenes[prev]);
+            }
+        }
+        if (scenes.size() == 0)
+            return null;
+
+        Metadata[] result = new Metadata[scenes.size()];
+        scenes.copyInto(result);
+        return result;
+    }
+
+    // class to fetch a single TOC file on one of the TOC fetch pool threads
+    //----------------------------------------------------------------------
+    private class TocFetch implements Runnable
+    {
+        private TOC cell;           // cell to read
+        private Sensor sensor;      // sensor to read the cell for
+
+        TocFetch(TOC cell, Sensor sensor)
+        {
+            this.cell = cell;
+            this.sensor = sensor;
+        }
+
+        public void run()
+        {
+            // nothing to do if the load was cancelled before this fetch
+            // got a chance to run
+            if (isLoadCancelled)
+                return;
+
+            // output a reading message if verbose output requested
+            if (applet.verboseOutput)
+            {
+                System.out.println("Reading TOC at " + cell.gridCol + " " 
+                                   + cell.gridRow);
+            }
+
+            sensor.readTOC(cell);
+
+            // identify the TOC so it can be cached when it is no longer
+            // displayed
+            cell.cacheKey = TocCache.makeKey(sensor, cell.gridCol,
+                                             cell.gridRow);
+            cell.readTime = System.currentTimeMillis();
+
+            // FIXME -  simulate a slow connection if requested
+            if (applet.slowdown)
+            {
+                try {Thread.currentThread().sleep(400);}
+                catch (InterruptedException e) {}
+            }
+        }
+    }
+
+    // helper method to return the order to load the cells in.  The active
+    // cell is first, followed by the cells sharing an edge with it, with the
+    // corners last.
+    //---------------------------------------------------------------------
+    private int[] getLoadOrder(int activeCell)
+    {
+        int activeCol = activeCell / mosaicHeight;
+        int activeRow = activeCell % mosaicHeight;
+        int[] order = new int[mosaicSize];
+        int count = 0;
+        for (int dist = 0; count < mosaicSize; dist++)
+        {
+            for (int i = 0; i < mosaicSize; i++)
+            {
+                int col = i / mosaicHeight;
+                int row = i % mosaicHeight;
+                if (Math.abs(col - activeCol) + Math.abs(row - activeRow)
+                    == dist)
+                {
+                    order[count] = i;
+                    count++;
+                }
+            }
+        }
+        return order;
+    }
+
+    // method to display the active cell when it has been read before the
+    // rest of the cells.  The cells that have not arrived yet are replaced
+    // by empty placeholders until the full load completes.
+    //---------------------------------------------------------------------
+    private void activatePartialTocArray()
+    {
+        TOC[] cells = loadingMosaicCells;
+        boolean[] published = publishedCells;
+        publishedCells = null;
+        if (published == null)
+            return;
+
+        // a target lat/long or a target scene outside the active cell can't
+        // be resolved until all the cells are available, so wait for them
+        TOC activeCell = cells[loadingActiveCellIndex];
+        if ((targetLatLong != null) || ((targetScene != null)
+            && ((targetScene.gridCol != activeCell.gridCol)
+                || (targetScene.gridRow != activeCell.gridRow))))
+        {
+            return;
+        }
+
+        TOC[] partialCells = new TOC[cells.length];
+        for (int i = 0; i < cells.length; i++)
+        {
+            if (published[i])
+                partialCells[i] = cells[i];
+            else
+                partialCells[i] = new TOC(CodeBase.getGlovisURL(),
+                                          cells[i].gridCol, cells[i].gridRow);
+        }
+
+        // activate the partial array, then set things up so the final 
+        // activation only adds the cells that were not published
+        loadingMosaicCells = partialCells;
+        activateNewTocArray();
+        loadingMosaicCells = cells;
+        loadingUsed = published;
+        partialTocArrayActive = true;
+    }
+
+    // method to finish activating a TOC array after the active cell was
+    // displayed early by activatePartialTocArray.  Only the cells that
+    // arrived since then are filtered and laid out.  Their scenes go below
+    // the scenes already in the z-order, so the displayed scenes stay on
+    // top and the selected scene doesn't change.
+    //---------------------------------------------------------------------
+    private void activateRemainingTocArray()
+    {
+        TOC[] cells = loadingMosaicCells;
+        boolean[] published = loadingUsed;
+        loadingMosaicCells = null;
+        loadingUsed = null;
+        partialTocArrayActive = false;
+
+        // replace the placeholders with the cells that arrived.  The
+        // projection was picked from the center cell, which was published.
+        Vector newCells = new Vector();
+        for (int i = 0; i < cells.length; i++)
+        {
+            if (published[i])
+                continue;
+            mosaicCells[i].cleanup();
+            TOC cell = cells[i];
+            mosaicCells[i] = cell;
+            if (cell.projCode != projectionCode) 
+                cell.valid = false;
+            cell.setSceneCorners(proj);
+            newCells.addElement(cell);
+        }
+        TOC[] filterCells = new TOC[newCells.size()];
+        newCells.copyInto(filterCells);
+
+        // filter the new cells in the same steps as activateNewTocArray.  The
+        // cells already displayed keep their selected scenes when the scene
+        // dates are picked again.
+        SceneFilterSettings filterSettings = getFilterSettings();
+        applyFilterSettings(filterCells, filterSettings.withUserArea(false));
+        pickSceneDates();
+        mosaicCoordsUpdate();
+        applyFilterSettings(filterCells, filterSettings);
+        pickSceneDates();
+        sceneFilter = currSensor.getSceneFilter(this,mosaicCells);
+
+        // add the selected scenes of the new cells below the displayed
+        // scenes, keeping the default order among the new cells
+        TOC activeCell = mosaicCells[activeCellIndex];
+        if (activeCell.valid)
+        {
+            setDefaultToSelectedDate(
+                        activeCell.scenes[activeCell.currentDateIndex]);
+        }
+        for (int i = mosaicCells.length - 1; i >= 0; i--)
+        {
+            TOC cell = mosaicCells[defaultZOrder[i]];
+            if (!published[defaultZOrder[i]] && cell.valid)
+                zOrderList.putOnBottom(cell.scenes[cell.currentDateIndex]);
+        }
+        if (currSensor.hasSwathMode && applet.toolsMenu.isSwathModeEnabled()
+            && activeCell.valid)
+        {
+            buildSwath(activeCell.scenes[activeCell.currentDateIndex], true);
+        }
+
+        // load the images for the new scenes (the requests in flight for
+        // the displayed scenes are adopted by the new load) and update the
+        // display without changing the selected scene
+        loadScenes();
+        setDisplaySize();
+        setSelectedCell(activeCellIndex, true);
+
+        // if a resolution change was made while reading TOC files, perform
+        // the resolution change now that the TOC load is complete
+        if (resolutionChangePending)
+        {
+            resolutionChangePending = false;
+            setResolution(pixelSize);
+        }
+
+        // start reading the cells the user is likely to scroll to next
+        startPrefetch();
+
+        // update the busy indicator state
+        applet.updateBusyIndicators();
+    }
+
     // run method for the TOC loader thread
     //-------------------------------------
     public void run()
@@ -1712,57 +2089,124 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
                     // return from the routine if the killThread flag is set
                     if (killThread)
                     {
+                        if (tocFetchPool != null)
+                            tocFetchPool.shutdownNow();
                         loaderThread = null;
                         return;
                     }
 
                 }
 
-                // count the TOC files to load
+                // create the pool of threads for fetching the TOC files the
+                // first time it is needed
+                if (tocFetchPool == null)
+                {
+                    tocFetchPool = Executors.newFixedThreadPool(tocLoaderCount,
+                        new ThreadFactory()
+                        {
+                            public Thread newThread(Runnable r)
+                            {
+                                Thread t = new Thread(r, "TOC Fetch Thread");
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        });
+                }
+
+                // keep a local reference to the cells since the GUI thread
+                // temporarily swaps the loadingMosaicCells when displaying
+                // the active cell early
+                TOC[] cells = loadingMosaicCells;
+                int activeCell = loadingActiveCellIndex;
+                Sensor sensor = currSensor;
+                int[] loadOrder = getLoadOrder(activeCell);
+
+                // only show the active cell early if it is the center cell
+                // (since the center cell determines the projection) and the
+                // full load will not need to match up scenes in the z-order
+                boolean canPublishEarly = (activeCell == mosaicCenterIndex)
+                            && !loadingPreserveZOrder && !sensor.isFullMosaic;
+
+                // start reading the TOC files that are not yet valid, in
+                // priority order
                 numTocsToLoad = 0;
                 currTocLoading = 0;
-                for (int i = 0; i < loadingMosaicCells.length; i++)
+                boolean[] published = new boolean[cells.length];
+                Future[] fetches = new Future[cells.length];
+                for (int n = 0; n < loadOrder.length; n++)
                 {
-                    if (!loadingMosaicCells[i].valid)
+                    int i = loadOrder[n];
+                    if (cells[i].valid)
+                        published[i] = true;
+                    else if (!sensor.hasInventory(cells[i].gridCol,
+                                                  cells[i].gridRow))
+                    {
+                        // the cell is known to be empty, so there is nothing
+                        // to request (the read just marks it as empty)
+                        sensor.readTOC(cells[i]);
+                        published[i] = true;
+                    }
+                    else
+                    {
                         numTocsToLoad++;
+                        fetches[i] = tocFetchPool.submit(
+                                            new TocFetch(cells[i], sensor));
+                    }
                 }
 
-                // read the TOC files that are not yet valid
-                for (int i = 0; i < loadingMosaicCells.length; i++)
+                // wait for the fetches to complete in priority order
+                boolean earlyPublished = false;
+                for (int n = 0; n < loadOrder.length; n++)
                 {
-                    // exit the loop if the load has been cancelled
-                    if (isLoadCancelled)
-                        break;
-
-                    if (!loadingMosaicCells[i].valid)
+                    int i = loadOrder[n];
+                    if (fetches[i] == null)
+                        continue;
+
+                    // wait for every fetch, even if the load has been
+                    // cancelled, so no fetch is still writing to a TOC or
+                    // holding a fetch thread once the load lock is
+                    // released.  Fetches that start after the cancel return
+                    // right away without reading (see TocFetch.run).
+                    try
                     {
-                        // output a reading message if verbose output requested
-                        if (applet.verboseOutput)
-                        {
-                            System.out.println("Reading TOC at " 
-                                + loadingMosaicCells[i].gridCol + " " 
-                                + loadingMosaicCells[i].gridRow);
-                        }
+                        fetches[i].get();
+                    }
+                    catch (InterruptedException e) {}
+                    catch (ExecutionException e)
+                    {
+                        System.out.println("Exception: " + e.getCause());
+                    }
 
-                        currSensor.readTOC(loadingMosaicCells[i]); 
+                    if (isLoadCancelled)
+                        continue;
 
-                        // FIXME -  simulate a slow connection if requested
-                        if (applet.slowdown)
-                        {
-                            try {Thread.currentThread().sleep(400);}
-                            catch (InterruptedException e) {}
-                        }
+                    // keep track of how many TOC files have been loaded
+                    published[i] = true;
+                    currTocLoading++;
 
-                        // keep track of how many TOC files have been loaded
-                        currTocLoading++;
+                    // if the active cell is ready and there are more cells to
+                    // read, let the image pane display the active cell now
+                    if ((i == activeCell) && canPublishEarly
+                        && cells[i].valid && (currTocLoading < numTocsToLoad))
+                    {
+                        // the image loader needs to finish the cancel before
+                        // any of the new cells can be used
+                        imageLoader.waitUntilDone();
+                        publishedCells = published.clone();
+                        earlyCellsReady = true;
+                        earlyPublished = true;
+                        pane.repaint();
                     }
                 }
 
                 // wait until the image loader has completed the cancel to make
                 // sure the new TOC can be set safely (note that any image 
                 // loads in progress have been cancelled when the new TOC file
-                // load was started)
-                imageLoader.waitUntilDone();
+                // load was started).  If the active cell was published early,
+                // this was already done and any images loading are for the
+                // cells that will be kept.
+                if (!earlyPublished)
+                    imageLoader.waitUntilDone();
 
                 // if the load wasn't cancelled, flag that load is complete and
                 // notify the image pane via a repaint command
@@ -1778,6 +2222,7 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
                 // make sure the isLoading flag is cleared in case the load
                 // was cancelled
                 isLoading = false;
+                foregroundLoadDone();
             }
         }
     }
@@ -2008,6 +2453,16 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
         mapLayers.cancelLoad();
         isCalledFromScrolledData = true;
 
+        // only prefetch beyond the new mosaic if this is a scroll in a
+        // direction
+        prefetchColStep = scrollColStep;
+        prefetchRowStep = scrollRowStep;
+        scrollColStep = 0;
+        scrollRowStep = 0;
+
+        // make any prefetched TOCs available to the new mosaic
+        takePrefetchedTocs();
+
         NavigationModel nm = currSensor.navModel;
 
         int[] rows = new int[mosaicHeight];
@@ -2060,16 +2515,25 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
             }
         }
 
-        // all the TOC's that can be reused have been copied.  So now, allocate
-        // new ones where needed.
+        // all the TOC's that can be reused have been copied.  So now, take
+        // the ones that were recently displayed from the TOC cache and 
+        // allocate new ones where needed.
         URL codebase = CodeBase.getGlovisURL();
         for(int i = 0; i < newTOC.length; i++)
         {
+            if (newTOC[i] == null)
+            {
+                newTOC[i] = tocCache.get(currSensor, cols[i / mosaicHeight],
+                                         rows[i % mosaicHeight]);
+            }
+
             // create a new TOC if needed
             if (newTOC[i] == null)
                 newTOC[i] = new TOC(codebase,cols[i / mosaicHeight],
                                     rows[i % mosaicHeight]);
         }
+        if (applet.verboseOutput)
+            System.out.println(tocCache.getStatistics());
 
         // set the current gridCol/gridRow
         gridCol = newCol;
@@ -2099,6 +2563,18 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
     //------------------------------------------------------------------
     public void refreshDisplay()
     {
+        // the TOCs are being read again, so don't keep any of the old ones
+        // and make sure any copies on disk are current
+        tocPrefetcher.cancel();
+        tocCache.clear();
+        for (int i = 0; i < mosaicCells.length; i++)
+            mosaicCells[i].cacheKey = null;
+        currSensor.clearNoInventory();
+        TocBundle.clearCache();
+        TocDiskCache diskCache = TocDiskCache.getCache();
+        if (diskCache != null)
+            diskCache.forceRevalidation();
+
         scrollData(gridCol, gridRow, subCol, subRow, true, false, false);
     }
 
@@ -2152,12 +2628,13 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
             }
         }
 
-        // flush any unused TOCs to make sure any resources used are released
+        // move any unused TOCs to the TOC cache (which releases the 
+        // resources used by the ones it doesn't keep)
         for (int i = 0; i < mosaicCells.length; i++)
         {
             if (!loadingUsed[i])
             {
-                mosaicCells[i].cleanup();
+                tocCache.put(mosaicCells[i]);
                 mosaicCells[i] = null;
             }
         }
@@ -2202,37 +2679,8 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
 
         // apply the cloud cover, date, scene list, and quality filters to
         // the TOC's
-        int startYear = applet.searchLimitDialog.getStartYear();
-        int endYear = applet.searchLimitDialog.getEndYear();
-        int startMonth = applet.searchLimitDialog.getStartMonth();
-        int endMonth = applet.searchLimitDialog.getEndMonth();
-        boolean sceneListFilterEnabled = 
-                    applet.searchLimitDialog.isSceneListFilterEnabled();
-        boolean downloadableFilterEnabled = 
-                    applet.searchLimitDialog.isDownloadableFilterEnabled();
-        int minQuality = applet.searchLimitDialog.getMinQuality();
-        String dataVersion = applet.searchLimitDialog.getDataVersion();
-        boolean userAreaFilterEnabled =
-                    applet.searchLimitDialog.isUserDefinedAreaEnabled();
-        int startGridCol = applet.searchLimitDialog.getStartGridCol();
-        int endGridCol = applet.searchLimitDialog.getEndGridCol();
-        int startGridRow = applet.searchLimitDialog.getStartGridRow();
-        int endGridRow = applet.searchLimitDialog.getEndGridRow();
-
-        for (int i = 0; i < mosaicCells.length; i++)
-        {
-            mosaicCells[i].filterScenesToCloudCover(maxCloudCover);
-            mosaicCells[i].filterScenesToDateRange(startYear,endYear,
-                                                   startMonth,endMonth);
-            mosaicCells[i].filterScenesToSceneList(sceneListFilterEnabled);
-            mosaicCells[i].filterScenesToDownloadable(downloadableFilterEnabled);
-            mosaicCells[i].filterScenesToQuality(minQuality);
-            mosaicCells[i].filterScenesToDataVersion(dataVersion);
-            mosaicCells[i].filterToHiddenScene();
-            mosaicCells[i].filterScenesToGridColRowRange(startGridCol,
-                                                endGridCol, startGridRow,
-                                                endGridRow);
-        }
+        SceneFilterSettings filterSettings = getFilterSettings();
+        applyFilterSettings(mosaicCells, filterSettings.withUserArea(false));
 
         // if there is a target lat/long set and this is a full mosaic sensor
         // displaying a single scene, search for the scene that is closest to
@@ -2256,8 +2704,8 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
                             // only consider visible scenes
                             if (scene.visible)
                             {
-                                double x = (scene.centerXY.x - location.x);
-                                double y = (scene.centerXY.y - location.y);
+                                double x = (scene.getCenterX() - location.x);
+                                double y = (scene.getCenterY() - location.y);
                                 double dist = x * x + y * y;
                                 if (dist < minDist)
                                 {
@@ -2291,9 +2739,7 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
         pickSceneDates();
         mosaicCoordsUpdate();
         targetScene = savedTargetScene;
-        for (int i = 0; i < mosaicCells.length; i++)
-            mosaicCells[i].filterScenesToUserArea(userAreaFilterEnabled,
-                                                  applet.userDefinedAreaDialog);
+        applyFilterSettings(mosaicCells, filterSettings);
 
         // run pick scene dates again now that the rest of the filtering
         // is complete
@@ -2334,10 +2780,143 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
             setResolution(pixelSize);
         }
 
+        // start reading the cells the user is likely to scroll to next
+        startPrefetch();
+
         // update the busy indicator state
         applet.updateBusyIndicators();
     }
 
+    // helper method to return the filter settings currently selected in the
+    // search limit dialog
+    //----------------------------------------------------------------------
+    private SceneFilterSettings getFilterSettings()
+    {
+        int startYear = applet.searchLimitDialog.getStartYear();
+        int endYear = applet.searchLimitDialog.getEndYear();
+        int startMonth = applet.searchLimitDialog.getStartMonth();
+        int endMonth = applet.searchLimitDialog.getEndMonth();
+        boolean sceneListFilterEnabled = 
+                    applet.searchLimitDialog.isSceneListFilterEnabled();
+        boolean downloadableFilterEnabled = 
+                    applet.searchLimitDialog.isDownloadableFilterEnabled();
+        int minQuality = applet.searchLimitDialog.getMinQuality();
+        String dataVersion = applet.searchLimitDialog.getDataVersion();
+        boolean userAreaFilterEnabled =
+                    applet.searchLimitDialog.isUserDefinedAreaEnabled();
+        int startGridCol = applet.searchLimitDialog.getStartGridCol();
+        int endGridCol = applet.searchLimitDialog.getEndGridCol();
+        int startGridRow = applet.searchLimitDialog.getStartGridRow();
+        int endGridRow = applet.searchLimitDialog.getEndGridRow();
+
+        return new SceneFilterSettings(
+                    currSensor, startYear, endYear, startMonth, endMonth,
+                    maxCloudCover, minQuality, dataVersion,
+                    userAreaFilterEnabled, sceneListFilterEnabled,
+                    downloadableFilterEnabled, startGridCol, endGridCol,
+                    startGridRow, endGridRow);
+    }
+
+    // method to start prefetching the TOCs for the row and/or column of
+    // cells just beyond the mosaic in the direction of the last scroll.
+    // Cells that are already displayed or cached are skipped.
+    //------------------------------------------------------------------
+    private void startPrefetch()
+    {
+        takePrefetchedTocs();
+
+        Vector cells = new Vector();
+        if (((prefetchColStep != 0) || (prefetchRowStep != 0))
+            && tocCache.isEnabled())
+        {
+            NavigationModel nm = currSensor.navModel;
+            int colReach = colCenterIndex + 1;
+            int rowReach = rowCenterIndex + 1;
+            for (int dc = -colReach; dc <= colReach; dc++)
+            {
+                if (!isInPrefetchRange(dc, prefetchColStep, colCenterIndex))
+                    continue;
+                for (int dr = -rowReach; dr <= rowReach; dr++)
+                {
+                    if (!isInPrefetchRange(dr, prefetchRowStep,
+                                           rowCenterIndex))
+                        continue;
+
+                    // only the cells beyond the edge of the mosaic
+                    if ((Math.abs(dc) <= colCenterIndex)
+                        && (Math.abs(dr) <= rowCenterIndex))
+                        continue;
+
+                    int col = gridCol + dc;
+                    int row = gridRow + dr;
+                    if (nm.allowColumnWrapAround())
+                        col = nm.checkColumnBounds(col);
+                    else if (col != nm.checkColumnBounds(col))
+                        continue;
+                    if (nm.allowRowWrapAround())
+                        row = nm.checkRowBounds(row);
+                    else if (row != nm.checkRowBounds(row))
+                        continue;
+
+                    if (nm.isValidGridCell(col, row)
+                        && (colRowToCell(col, row) == -1)
+                        && !tocCache.contains(currSensor, col, row))
+                    {
+                        cells.addElement(new int[] {col, row});
+                    }
+                }
+            }
+        }
+        tocPrefetcher.prefetch(currSensor, cells);
+    }
+
+    // helper method for startPrefetch to check whether a cell offset from
+    // the center of the mosaic is on the side of the mosaic being scrolled
+    // towards (or inside the mosaic if not scrolling along that axis)
+    //----------------------------------------------------------------------
+    private static boolean isInPrefetchRange(int offset, int step,
+                                             int centerIndex)
+    {
+        if (step > 0)
+            return offset >= -centerIndex;
+        else if (step < 0)
+            return offset <= centerIndex;
+        return Math.abs(offset) <= centerIndex;
+    }
+
+    // method to move the TOCs read by the prefetch thread into the TOC
+    // cache.  Ones that ended up in the mosaic anyway are discarded.
+    //-----------------------------------------------------------------
+    private void takePrefetchedTocs()
+    {
+        Vector cells = tocPrefetcher.takeCompleted();
+        for (int i = 0; i < cells.size(); i++)
+        {
+            TOC cell = (TOC)cells.elementAt(i);
+            if (colRowToCell(cell.gridCol, cell.gridRow) == -1)
+                tocCache.put(cell);
+            else
+                cell.cleanup();
+        }
+    }
+
+    // method to return whether TOC files or images are being loaded for
+    // the display.  Used by the prefetch thread to stay out of the way.
+    //-------------------------------------------------------------------
+    public boolean isForegroundLoadActive()
+    {
+        return isLoading || imageLoader.isBusy();
+    }
+
+    // method called by the TOC and image loader threads when they stop
+    // loading for the display, after clearing their loading flags, so the
+    // prefetch thread waiting for them can check again
+    //--------------------------------------------------------------------
+    public void foregroundLoadDone()
+    {
+        tocPrefetcher.foregroundLoadDone();
+    }
+
     // method to allow the resolution to be set
     //-----------------------------------------
     public void setResolution(int resolution)
@@ -2519,7 +3098,7 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
             applet.statusBar.showStatus("Loading Imagery...");
             applet.updateBusyIndicators();
             imageLoader.loadImages(zOrderList,cellsToDisplay,pixelSize,
-                                   currSensor);
+                                   currSensor,getDatePrefetchScenes());
         }
     }    
 
@@ -2811,20 +3390,105 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
                      boolean downloadableFilterEnabled, int startGridCol,
                      int endGridCol, int startGridRow, int endGridRow)                                           
     {
+        applyFilterSettings(toc, new SceneFilterSettings(currSensor,
+                startYear, endYear, startMonth, endMonth, maxCloudCover,
+                minQuality, dataVersion, userAreaFilterEnabled,
+                sceneListFilterEnabled, downloadableFilterEnabled,
+                startGridCol, endGridCol, startGridRow, endGridRow));
+    }
+
+    // method to apply a set of filter settings to the TOCs.  When there are
+    // a lot of scenes in the cells (i.e. daily datasets), the cells are
+    // filtered in parallel.  The user defined area filter shares state
+    // between the cells, so the cells are always filtered one at a time
+    // when it is enabled.
+    //----------------------------------------------------------------------
+    private void applyFilterSettings(TOC[] toc, SceneFilterSettings settings)
+    {
+        int totalScenes = 0;
         for (int i = 0; i < toc.length; i++)
         {
-            toc[i].filterScenesToDateRange(startYear,endYear,startMonth,
-                                           endMonth);
-            toc[i].filterScenesToCloudCover(maxCloudCover);
-            toc[i].filterScenesToSceneList(sceneListFilterEnabled);
-            toc[i].filterScenesToDownloadable(downloadableFilterEnabled);
-            toc[i].filterScenesToQuality(minQuality);
-            toc[i].filterScenesToDataVersion(dataVersion);
-            toc[i].filterToHiddenScene();
-            toc[i].filterScenesToUserArea(userAreaFilterEnabled,
-                                          applet.userDefinedAreaDialog);
-            toc[i].filterScenesToGridColRowRange(startGridCol,endGridCol,
-                                                startGridRow,endGridRow);
+            if (toc[i].valid)
+                totalScenes += toc[i].numImg;
+        }
+
+        if ((totalScenes < PARALLEL_FILTER_SCENES) || (toc.length < 2)
+            || settings.userAreaEnabled)
+        {
+            for (int i = 0; i < toc.length; i++)
+                toc[i].applyFilters(settings, applet.userDefinedAreaDialog);
+            return;
+        }
+
+        // create the pool of threads for filtering the first time it is
+        // needed
+        if (filterPool == null)
+        {
+            int numThreads = Math.min(Runtime.getRuntime().availableProcessors(),
+                                      mosaicSize);
+            filterPool = Executors.newFixedThreadPool(Math.max(numThreads, 1),
+                new ThreadFactory()
+                {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t = new Thread(r, "Scene Filter Thread");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+
+        // filter the first cell on this thread while the others are
+        // filtered by the pool
+        Future[] filters = new Future[toc.length];
+        for (int i = 1; i < toc.length; i++)
+            filters[i] = filterPool.submit(new CellFilter(toc[i], settings));
+        toc[0].applyFilters(settings, applet.userDefinedAreaDialog);
+
+        // wait for all the cells to be filtered (the cells can't be used
+        // until they are, so keep waiting if interrupted)
+        boolean interrupted = false;
+        for (int i = 1; i < toc.length; i++)
+        {
+            while (true)
+            {
+                try
+                {
+                    filters[i].get();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+                catch (ExecutionException e)
+                {
+                    System.out.println("Exception:  "+e.getCause());
+                    break;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    // class to apply the filter settings to a single cell on one of the
+    // filter pool threads
+    //------------------------------------------------------------------
+    private class CellFilter implements Runnable
+    {
+        private TOC cell;                   // cell to filter
+        private SceneFilterSettings settings; // settings to apply
+
+        CellFilter(TOC cell, SceneFilterSettings settings)
+        {
+            this.cell = cell;
+            this.settings = settings;
+        }
+
+        public void run()
+        {
+            cell.applyFilters(settings, null);
         }
     }
     
@@ -3040,6 +3704,9 @@ public class MosaicData extends Observable implements Runnable, WorkMonitor
             if (mosaicCells[i] != null)
                 mosaicCells[i].cleanup();
         }
+        tocPrefetcher.cancel();
+        tocCache.clear();
+        TocBundle.clearCache();
     }
 
     // methods to return information about the current size of the mosaic
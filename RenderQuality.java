@@ -0,0 +1,138 @@
+// RenderQuality.java implements the controller for the quality the display
+// is drawn at.  While the user is interacting with the display (dragging
+// it, scrolling it or navigating with the keyboard), or when the last frame
+// took longer than the frame time budget, the display is drawn at reduced
+// quality so it keeps up.  Full quality is restored once nothing has
+// happened for a short time, with one more repaint.
+//
+// The quality is passed to the drawing code through the rendering hints of
+// the graphics context:
+//   - KEY_RENDERING is VALUE_RENDER_SPEED at reduced quality, which the map
+//     layers check to turn off antialiasing and skip their shadows.
+//   - KEY_INTERPOLATION is nearest neighbor at reduced quality and bilinear
+//     at full quality, for the images drawn scaled.
+//
+// A slow frame drawn right after full quality is restored doesn't reduce
+// the quality again, so a display that is always slow to draw doesn't keep
+// repainting itself.
+//
+//  Note: all the methods are called from the GUI thread.
+//--------------------------------------------------------------------------
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.Timer;
+
+class RenderQuality implements ActionListener
+{
+    // time without interaction or slow frames before full quality is
+    // restored (in milliseconds)
+    private static final int SETTLE_DELAY = 300;
+
+    private Component display;      // component to repaint when full
+                                    // quality is restored
+    private Timer settleTimer;      // timer for restoring full quality
+    private long frameBudget;       // longest a frame can take before the
+                                    // quality is reduced (milliseconds, 0
+                                    // to never reduce it for slow frames)
+    private boolean reduced;        // flag that reduced quality is in use
+    private boolean settleFrame;    // flag that the next frame is the one
+                                    // drawn when full quality is restored
+
+    // constructor
+    //------------
+    RenderQuality(Component display, long frameBudget)
+    {
+        this.display = display;
+        this.frameBudget = frameBudget;
+        settleTimer = new Timer(SETTLE_DELAY, this);
+        settleTimer.setRepeats(false);
+    }
+
+    // method to set the frame time budget (in milliseconds, 0 to never
+    // reduce the quality for slow frames)
+    //-----------------------------------------------------------------
+    void setFrameBudget(long millis)
+    {
+        frameBudget = Math.max(0, millis);
+    }
+
+    // method to return whether the display is drawn at reduced quality
+    //-----------------------------------------------------------------
+    boolean isReduced()
+    {
+        return reduced;
+    }
+
+    // method to call when the user interacts with the display
+    //--------------------------------------------------------
+    void interaction()
+    {
+        reduce();
+    }
+
+    // method to call when a frame has been drawn, with the time it took
+    //------------------------------------------------------------------
+    void frameDone(long millis)
+    {
+        boolean wasSettleFrame = settleFrame;
+        settleFrame = false;
+        if (!reduced && !wasSettleFrame && (frameBudget > 0)
+            && (millis > frameBudget))
+        {
+            reduce();
+        }
+    }
+
+    // method to set the rendering hints for the current quality in a
+    // graphics context
+    //---------------------------------------------------------------
+    void applyHints(Graphics g)
+    {
+        Graphics2D g2 = (Graphics2D)g;
+        if (reduced)
+        {
+            g2.setRenderingHint(RenderingHints.KEY_RENDERING,
+                                RenderingHints.VALUE_RENDER_SPEED);
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        }
+        else
+        {
+            g2.setRenderingHint(RenderingHints.KEY_RENDERING,
+                                RenderingHints.VALUE_RENDER_DEFAULT);
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+    }
+
+    // method to return whether a graphics context is set for reduced
+    // quality
+    //---------------------------------------------------------------
+    static boolean isReduced(Graphics g)
+    {
+        return ((Graphics2D)g).getRenderingHint(RenderingHints.KEY_RENDERING)
+               == RenderingHints.VALUE_RENDER_SPEED;
+    }
+
+    // handle the settle timer by restoring full quality
+    //--------------------------------------------------
+    public void actionPerformed(ActionEvent event)
+    {
+        reduced = false;
+        settleFrame = true;
+        display.repaint();
+    }
+
+    // helper method to reduce the quality until things settle
+    //--------------------------------------------------------
+    private void reduce()
+    {
+        reduced = true;
+        settleFrame = false;
+        settleTimer.restart();
+    }
+}
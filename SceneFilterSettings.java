@@ -0,0 +1,146 @@
+// SceneFilterSettings.java holds one complete set of the search limits
+// applied to the scenes in a TOC.  The SceneStore remembers the settings it
+// last applied, so when a new set of settings is applied only the filters
+// whose settings changed need to be evaluated again.
+//
+// The scene list and hidden scene list filters depend on the contents of
+// the lists, so the version of each list is part of the settings.  The user
+// defined area filter depends on the area, which does not have a version, so
+// it is always evaluated when it is enabled.
+//--------------------------------------------------------------------------
+
+public class SceneFilterSettings
+{
+    final int startYear;            // first year of the date range
+    final int endYear;              // last year of the date range
+    final int startMonth;           // first month of the date range (0-11)
+    final int endMonth;             // last month of the date range (0-11)
+    final int maxCloudCover;        // maximum cloud cover percentage
+    final int minQuality;           // minimum quality value
+    final String dataVersion;       // data version to show ("All" for all)
+    final boolean userAreaEnabled;  // user defined area filter enabled
+    final boolean sceneListEnabled; // scene list filter enabled
+    final boolean downloadableEnabled; // downloadable filter enabled
+    final int startGridCol;         // first grid column to show
+    final int endGridCol;           // last grid column to show
+    final int startGridRow;         // first grid row to show
+    final int endGridRow;           // last grid row to show
+    final int sceneListVersion;     // version of the scene list contents
+    final int hiddenListVersion;    // version of the hidden list contents
+
+    // mask of the filter flags the settings control
+    static final int FILTERS = Metadata.CLOUD_COVER_FILTER
+                             | Metadata.DATE_FILTER
+                             | Metadata.SCENE_LIST_FILTER
+                             | Metadata.QUALITY_FILTER
+                             | Metadata.DATA_VERSION_FILTER
+                             | Metadata.HIDDEN_SCENE_FILTER
+                             | Metadata.USER_DEFINED_AREA_FILTER
+                             | Metadata.GRID_COL_ROW_FILTER
+                             | Metadata.DOWNLOADABLE_FILTER;
+
+    // Constructor for the filter settings.  The scene list versions are
+    // captured from the sensor passed in.
+    //------------------------------------------------------------------
+    SceneFilterSettings(Sensor sensor, int startYear, int endYear,
+            int startMonth, int endMonth, int maxCloudCover, int minQuality,
+            String dataVersion, boolean userAreaEnabled,
+            boolean sceneListEnabled, boolean downloadableEnabled,
+            int startGridCol, int endGridCol, int startGridRow,
+            int endGridRow)
+    {
+        this.startYear = startYear;
+        this.endYear = endYear;
+        this.startMonth = startMonth;
+        this.endMonth = endMonth;
+        this.maxCloudCover = maxCloudCover;
+        this.minQuality = minQuality;
+        this.dataVersion = dataVersion;
+        this.userAreaEnabled = userAreaEnabled;
+        this.sceneListEnabled = sceneListEnabled;
+        this.downloadableEnabled = downloadableEnabled;
+        this.startGridCol = startGridCol;
+        this.endGridCol = endGridCol;
+        this.startGridRow = startGridRow;
+        this.endGridRow = endGridRow;
+        sceneListVersion = sensor.sceneList.getVersion();
+        hiddenListVersion = sensor.hiddenSceneList.getVersion();
+    }
+
+    // method to return a copy of the settings with the user defined area
+    // filter enabled or disabled
+    //-------------------------------------------------------------------
+    SceneFilterSettings withUserArea(boolean enabled)
+    {
+        if (enabled == userAreaEnabled)
+            return this;
+        return new SceneFilterSettings(this, enabled);
+    }
+
+    // private constructor used by withUserArea
+    private SceneFilterSettings(SceneFilterSettings other,
+                                boolean userAreaEnabled)
+    {
+        startYear = other.startYear;
+        endYear = other.endYear;
+        startMonth = other.startMonth;
+        endMonth = other.endMonth;
+        maxCloudCover = other.maxCloudCover;
+        minQuality = other.minQuality;
+        dataVersion = other.dataVersion;
+        this.userAreaEnabled = userAreaEnabled;
+        sceneListEnabled = other.sceneListEnabled;
+        downloadableEnabled = other.downloadableEnabled;
+        startGridCol = other.startGridCol;
+        endGridCol = other.endGridCol;
+        startGridRow = other.startGridRow;
+        endGridRow = other.endGridRow;
+        sceneListVersion = other.sceneListVersion;
+        hiddenListVersion = other.hiddenListVersion;
+    }
+
+    // method to return the filter flags that need to be evaluated again
+    // when changing from the previous settings to these settings.  All the
+    // filters are returned if there are no previous settings.
+    //---------------------------------------------------------------------
+    int changedFilters(SceneFilterSettings previous)
+    {
+        if (previous == null)
+            return FILTERS;
+
+        int changed = 0;
+        if ((startYear != previous.startYear)
+            || (endYear != previous.endYear)
+            || (startMonth != previous.startMonth)
+            || (endMonth != previous.endMonth))
+        {
+            changed |= Metadata.DATE_FILTER;
+        }
+        if (maxCloudCover != previous.maxCloudCover)
+            changed |= Metadata.CLOUD_COVER_FILTER;
+        if (minQuality != previous.minQuality)
+            changed |= Metadata.QUALITY_FILTER;
+        if (!dataVersion.equals(previous.dataVersion))
+            changed |= Metadata.DATA_VERSION_FILTER;
+        if ((sceneListEnabled != previous.sceneListEnabled)
+            || (sceneListEnabled
+                && (sceneListVersion != previous.sceneListVersion)))
+        {
+            changed |= Metadata.SCENE_LIST_FILTER;
+        }
+        if (hiddenListVersion != previous.hiddenListVersion)
+            changed |= Metadata.HIDDEN_SCENE_FILTER;
+        if (userAreaEnabled || previous.userAreaEnabled)
+            changed |= Metadata.USER_DEFINED_AREA_FILTER;
+        if ((startGridCol != previous.startGridCol)
+            || (endGridCol != previous.endGridCol)
+            || (startGridRow != previous.startGridRow)
+            || (endGridRow != previous.endGridRow))
+        {
+            changed |= Metadata.GRID_COL_ROW_FILTER;
+        }
+        if (downloadableEnabled != previous.downloadableEnabled)
+            changed |= Metadata.DOWNLOADABLE_FILTER;
+        return changed;
+    }
+}
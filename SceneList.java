@@ -7,6 +7,7 @@ import java.net.URL;
 import java.net.URLEncoder;
 import java.util.Vector;
 import javax.swing.DefaultListModel;
+import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 import javax.swing.JOptionPane;
 import javax.swing.ListModel;
@@ -20,6 +21,7 @@ public class SceneList implements ListModel
     private imgViewer applet;   // reference to main applet
     private int maxOrderSize;   // max order URL size before Explorer error
     private int maxUrlLength;   // max length of a URL
+    private int version;        // incremented each time the list changes
 
     // Constructor for the SceneList
     //------------------------------
@@ -32,6 +34,16 @@ public class SceneList implements ListModel
         list = new DefaultListModel();
         savedList = new Vector();
 
+        // track changes to the list contents so the scene filters can tell
+        // when the list filters need to be evaluated again
+        version = 0;
+        list.addListDataListener(new ListDataListener()
+        {
+            public void intervalAdded(ListDataEvent e) { version++; }
+            public void intervalRemoved(ListDataEvent e) { version++; }
+            public void contentsChanged(ListDataEvent e) { version++; }
+        });
+
         // determine the maximum length of a URL
         if (applet.usingIE)
         {
@@ -66,6 +78,14 @@ public class SceneList implements ListModel
 
     }
     
+    // method to return the version of the list contents.  The version
+    // changes each time a scene is added to or removed from the list.
+    //-----------------------------------------------------------------
+    public int getVersion()
+    {
+        return version;
+    }
+
     // Add a specific scene to the scene list
     //---------------------------------------
     public void add(Metadata scene)
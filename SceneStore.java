@@ -0,0 +1,607 @@
+// SceneStore.java holds the frequently scanned scene values for a TOC in
+// parallel primitive arrays (one entry per scene, in the same order as the
+// TOC's scenes array).  The filters and date navigation walk these arrays
+// instead of following a reference to a Metadata object for every scene,
+// and the per-scene offsets, center point, and filter flags are kept here
+// instead of in small objects owned by each Metadata.
+//
+// Each Metadata object in a TOC is attached to exactly one store at an
+// index.  When the scenes of a TOC are rearranged (i.e. merged or trimmed),
+// a new store is built for the new arrangement with the build method.
+// Scenes that don't belong to a TOC (the copies kept in the scene lists and
+// for downloads) aren't attached to a store.  Their values are kept in a
+// single small array laid out as described by the DETACHED constants, so a
+// copy doesn't allocate a column array for every value.
+//
+// The search limits are applied with the applyFilters method, which
+// evaluates all the filters that need it in a single pass over the scenes.
+// The store remembers the settings it last applied and only evaluates the
+// filters whose settings changed (or whose flags were changed some other
+// way since then).  A bitset of the visible scenes is kept up to date with
+// the filter flags so the visible scenes can be counted and stepped through
+// quickly.
+//
+// Once all the scenes have been added, buildIndexes creates an index of the
+// scenes in date order and a table of the scenes by entity ID.  The scenes
+// of a TOC are normally already in date order, in which case the date
+// column itself is the date index.
+//-------------------------------------------------------------------------
+import java.util.Arrays;
+import java.util.Hashtable;
+
+
+public class SceneStore
+{
+    int size;               // number of scenes in the store
+    int[] date;             // date in YYYYMMDD format
+    int[] year;             // year of the date
+    int[] month;            // month of the date (1-12)
+    int[] jDate;            // julian day of the year
+    int[] cloudCover;       // cloud cover percentage
+    int[] centerX;          // scene center X coordinate
+    int[] centerY;          // scene center Y coordinate
+    int[] filterFlags;      // filter bit flags (see Metadata), 0 if visible
+    int[] offsets;          // sample/line offsets to the data in the scene,
+                            // 8 values per scene in UL, UR, LR, LL order with
+                            // the sample offset before the line offset
+    private Metadata[] scenes; // scenes attached to the store (used to keep
+                            // the visible flag in the scenes up to date)
+    private long[] visibleBits; // bitset of the visible scenes
+    private SceneFilterSettings appliedSettings; // filter settings last
+                            // applied by applyFilters (null if none)
+    private int externalFlags; // filter flags changed outside of
+                            // applyFilters since the settings were applied
+    private int[] dateOrder; // scene indices in date order (null if the
+                            // scenes are already in date order)
+    private Hashtable entityIndex; // scene index for each entity ID
+
+    // number of offset values stored for each scene
+    static final int OFFSETS_PER_SCENE = 8;
+
+    // layout of the values array of a scene that isn't attached to a store
+    static final int DETACHED_CENTER_X = 0;
+    static final int DETACHED_CENTER_Y = 1;
+    static final int DETACHED_FLAGS = 2;
+    static final int DETACHED_OFFSETS = 3;
+    static final int DETACHED_SIZE = DETACHED_OFFSETS + OFFSETS_PER_SCENE;
+
+    // Constructor for a store with room for the indicated number of scenes
+    //---------------------------------------------------------------------
+    SceneStore(int capacity)
+    {
+        size = 0;
+        date = new int[capacity];
+        year = new int[capacity];
+        month = new int[capacity];
+        jDate = new int[capacity];
+        cloudCover = new int[capacity];
+        centerX = new int[capacity];
+        centerY = new int[capacity];
+        filterFlags = new int[capacity];
+        offsets = new int[capacity * OFFSETS_PER_SCENE];
+        scenes = new Metadata[capacity];
+        visibleBits = new long[(capacity + 63) >> 6];
+    }
+
+    // method to build a new store for an array of scenes.  The values for
+    // each scene are copied from the store it is currently attached to and
+    // the scene is attached to the new store.
+    //-------------------------------------------------------------------
+    static SceneStore build(Metadata[] scenes, int count)
+    {
+        SceneStore store = new SceneStore(count);
+        for (int i = 0; i < count; i++)
+            scenes[i].attach(store);
+        store.buildIndexes();
+        return store;
+    }
+
+    // method to build the date and entity ID indexes once all the scenes
+    // have been added to the store
+    //-------------------------------------------------------------------
+    void buildIndexes()
+    {
+        // the date index is only needed if the scenes aren't in date order
+        dateOrder = null;
+        for (int i = 1; i < size; i++)
+        {
+            if (date[i] < date[i - 1])
+            {
+                dateOrder = sortByDate();
+                break;
+            }
+        }
+
+        // index the scenes by entity ID.  If an entity ID appears more than
+        // once, the first scene with it is kept.
+        entityIndex = new Hashtable(size * 2 + 1);
+        for (int i = 0; i < size; i++)
+        {
+            String entityID = scenes[i].entityID;
+            if ((entityID != null) && !entityIndex.containsKey(entityID))
+                entityIndex.put(entityID, Integer.valueOf(i));
+        }
+    }
+
+    // helper method to return the scene indices sorted by date.  Scenes on
+    // the same date are kept in index order.
+    //---------------------------------------------------------------------
+    private int[] sortByDate()
+    {
+        // sort the date and index together in a long so a plain sort keeps
+        // scenes on the same date in index order
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = ((long)date[i] << 32) | i;
+        Arrays.sort(keys);
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++)
+            order[i] = (int)keys[i];
+        return order;
+    }
+
+    // method to return the scene index at a position in date order
+    //-------------------------------------------------------------
+    int sceneAt(int position)
+    {
+        return (dateOrder == null) ? position : dateOrder[position];
+    }
+
+    // helper method to return the day number used to measure the days
+    // between two dates (consistent with daysBetween)
+    //----------------------------------------------------------------
+    private int dayNumber(int index)
+    {
+        return 365 * year[index] + jDate[index];
+    }
+
+    // method to return the index of a scene with an entity ID.  Returns -1
+    // if the entity ID isn't in the store.
+    //---------------------------------------------------------------------
+    int findEntity(String entityID)
+    {
+        if ((entityIndex == null) || (entityID == null))
+            return -1;
+        Integer index = (Integer)entityIndex.get(entityID);
+        return (index == null) ? -1 : index.intValue();
+    }
+
+    // method to return the first position in date order of a scene on or
+    // after a date (size if there isn't one)
+    //--------------------------------------------------------------------
+    int firstPositionOfDate(int targetDate)
+    {
+        int low = 0;
+        int high = size;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (date[sceneAt(mid)] < targetDate)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    // method to find the visible scene nearest to a date.  If more than one
+    // scene is the same number of days away, the one with the lowest index
+    // is returned.  Returns -1 if no scenes are visible.
+    //----------------------------------------------------------------------
+    int findClosestVisible(int targetYear, int targetJDate)
+    {
+        int target = 365 * targetYear + targetJDate;
+
+        // find the first position on or after the target day
+        int low = 0;
+        int high = size;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (dayNumber(sceneAt(mid)) < target)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        // find the nearest visible scenes before and after the target
+        int after = low;
+        while ((after < size) && !isVisible(sceneAt(after)))
+            after++;
+        int before = low - 1;
+        while ((before >= 0) && !isVisible(sceneAt(before)))
+            before--;
+
+        int afterDays = (after < size) ? dayNumber(sceneAt(after)) - target
+                                       : Integer.MAX_VALUE;
+        int beforeDays = (before >= 0) ? target - dayNumber(sceneAt(before))
+                                       : Integer.MAX_VALUE;
+        if ((afterDays == Integer.MAX_VALUE) 
+            && (beforeDays == Integer.MAX_VALUE))
+        {
+            return -1;
+        }
+        int bestDays = Math.min(afterDays, beforeDays);
+
+        // pick the lowest index of the visible scenes that are the best
+        // number of days away
+        int found = Integer.MAX_VALUE;
+        if (beforeDays == bestDays)
+        {
+            int day = target - bestDays;
+            for (int pos = before; pos >= 0; pos--)
+            {
+                int index = sceneAt(pos);
+                if (dayNumber(index) != day)
+                    break;
+                if (isVisible(index) && (index < found))
+                    found = index;
+            }
+        }
+        if (afterDays == bestDays)
+        {
+            int day = target + bestDays;
+            for (int pos = after; pos < size; pos++)
+            {
+                int index = sceneAt(pos);
+                if (dayNumber(index) != day)
+                    break;
+                if (isVisible(index) && (index < found))
+                    found = index;
+            }
+        }
+        return found;
+    }
+
+    // method to add a scene to the store.  The values for the scene are
+    // copied from the old store (if any).  Returns the index of the scene
+    // in this store.
+    //------------------------------------------------------------------
+    int add(Metadata scene, SceneStore oldStore, int oldIndex)
+    {
+        int index = size;
+        size++;
+        scenes[index] = scene;
+        if (oldStore != null)
+        {
+            date[index] = oldStore.date[oldIndex];
+            year[index] = oldStore.year[oldIndex];
+            month[index] = oldStore.month[oldIndex];
+            jDate[index] = oldStore.jDate[oldIndex];
+            cloudCover[index] = oldStore.cloudCover[oldIndex];
+            centerX[index] = oldStore.centerX[oldIndex];
+            centerY[index] = oldStore.centerY[oldIndex];
+            filterFlags[index] = oldStore.filterFlags[oldIndex];
+            System.arraycopy(oldStore.offsets, oldIndex * OFFSETS_PER_SCENE,
+                             offsets, index * OFFSETS_PER_SCENE,
+                             OFFSETS_PER_SCENE);
+        }
+        if (filterFlags[index] == 0)
+            visibleBits[index >> 6] |= 1L << index;
+        return index;
+    }
+
+    // method to add a scene that isn't attached to a store, copying its
+    // values from the scene and its values array.  Returns the index of the
+    // scene in this store.
+    //----------------------------------------------------------------------
+    int addDetached(Metadata scene, int[] values)
+    {
+        int index = add(scene, null, 0);
+        date[index] = scene.date;
+        year[index] = scene.year;
+        month[index] = scene.month;
+        jDate[index] = scene.jDate;
+        cloudCover[index] = scene.cloudCover;
+        centerX[index] = values[DETACHED_CENTER_X];
+        centerY[index] = values[DETACHED_CENTER_Y];
+        System.arraycopy(values, DETACHED_OFFSETS, offsets,
+                         index * OFFSETS_PER_SCENE, OFFSETS_PER_SCENE);
+        filterFlags[index] = values[DETACHED_FLAGS];
+        if (filterFlags[index] != 0)
+            visibleBits[index >> 6] &= ~(1L << index);
+        return index;
+    }
+
+    // method to return a new values array (laid out as described by the
+    // DETACHED constants) holding the values of a scene in the store
+    //------------------------------------------------------------------
+    int[] getDetachedValues(int index)
+    {
+        int[] values = new int[DETACHED_SIZE];
+        values[DETACHED_CENTER_X] = centerX[index];
+        values[DETACHED_CENTER_Y] = centerY[index];
+        values[DETACHED_FLAGS] = filterFlags[index];
+        System.arraycopy(offsets, index * OFFSETS_PER_SCENE, values,
+                         DETACHED_OFFSETS, OFFSETS_PER_SCENE);
+        return values;
+    }
+
+    // method to return whether a scene is visible
+    //--------------------------------------------
+    final boolean isVisible(int index)
+    {
+        return filterFlags[index] == 0;
+    }
+
+    // method to calculate the number of days between a scene and a date
+    //   Note: the extra day in leap years is ignored (same as
+    //   Metadata.daysBetween)
+    //-------------------------------------------------------------------
+    final int daysBetween(int index, int targetYear, int targetJDate)
+    {
+        int sceneYear = year[index];
+        if (targetYear == sceneYear)
+            return Math.abs(targetJDate - jDate[index]);
+        else if (targetYear < sceneYear)
+            return 365 * (sceneYear - targetYear) + jDate[index] - targetJDate;
+        else
+            return 365 * (targetYear - sceneYear) + targetJDate - jDate[index];
+    }
+
+    // method to return the number of visible scenes
+    //----------------------------------------------
+    int countVisible()
+    {
+        int count = 0;
+        for (int i = 0; i < visibleBits.length; i++)
+            count += Long.bitCount(visibleBits[i]);
+        return count;
+    }
+
+    // method to return the index of the first visible scene at or after the
+    // index passed in.  Returns -1 if there isn't one.
+    //----------------------------------------------------------------------
+    int nextVisible(int index)
+    {
+        if ((index < 0) || (index >= size))
+            return -1;
+        int word = index >> 6;
+        long bits = visibleBits[word] & (-1L << index);
+        while (bits == 0)
+        {
+            word++;
+            if (word >= visibleBits.length)
+                return -1;
+            bits = visibleBits[word];
+        }
+        int found = (word << 6) + Long.numberOfTrailingZeros(bits);
+        return (found < size) ? found : -1;
+    }
+
+    // method to return the index of the last visible scene at or before the
+    // index passed in.  Returns -1 if there isn't one.
+    //----------------------------------------------------------------------
+    int previousVisible(int index)
+    {
+        if (index >= size)
+            index = size - 1;
+        if (index < 0)
+            return -1;
+        int word = index >> 6;
+        long bits = visibleBits[word] & (-1L >>> (63 - (index & 63)));
+        while (bits == 0)
+        {
+            word--;
+            if (word < 0)
+                return -1;
+            bits = visibleBits[word];
+        }
+        return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+    }
+
+    // helper method to store new filter flags for a scene, keeping the
+    // visible bitset and the visible flag of the scene up to date
+    //-----------------------------------------------------------------
+    private void storeFlags(int index, int flags)
+    {
+        filterFlags[index] = flags;
+        if (flags == 0)
+            visibleBits[index >> 6] |= 1L << index;
+        else
+            visibleBits[index >> 6] &= ~(1L << index);
+        scenes[index].visible = (flags == 0);
+    }
+
+    // method to set or clear a filter flag for a scene, keeping the visible
+    // flag of the scene up to date
+    //----------------------------------------------------------------------
+    final void setFilter(int index, int flag, boolean filtered)
+    {
+        int flags = filterFlags[index];
+        if (filtered)
+            flags |= flag;
+        else
+            flags &= ~flag;
+        storeFlags(index, flags);
+
+        // the flag no longer reflects the applied settings
+        externalFlags |= flag;
+    }
+
+    // method to apply a set of search limits to the scenes.  Only the
+    // filters that have changed since the last call are evaluated, and all
+    // of those are evaluated in a single pass over the scenes.  The
+    // tocSensor is the sensor for the TOC (the scenes in a combined dataset
+    // TOC have their own sensors).
+    //  Note: this does not touch any state outside the store except for the
+    //  scene visible flags, so stores can be filtered on different threads
+    //  as long as the user defined area filter doesn't need evaluating.
+    //---------------------------------------------------------------------
+    void applyFilters(SceneFilterSettings settings, Sensor tocSensor,
+                      UserDefinedAreaDialog userDefinedAreaDialog)
+    {
+        int evaluate = (settings.changedFilters(appliedSettings)
+                        | externalFlags) & SceneFilterSettings.FILTERS;
+        appliedSettings = settings;
+        externalFlags = 0;
+        if ((evaluate == 0) || (size == 0))
+            return;
+
+        boolean doDate = ((evaluate & Metadata.DATE_FILTER) != 0);
+        boolean doCloudCover = ((evaluate & Metadata.CLOUD_COVER_FILTER) != 0);
+        boolean doSceneList = ((evaluate & Metadata.SCENE_LIST_FILTER) != 0);
+        boolean doQuality = ((evaluate & Metadata.QUALITY_FILTER) != 0)
+                            && (tocSensor.numQualityValues > 0);
+        boolean doDataVersion = ((evaluate & Metadata.DATA_VERSION_FILTER)
+                                 != 0);
+        boolean doHidden = ((evaluate & Metadata.HIDDEN_SCENE_FILTER) != 0);
+        boolean doUserArea = ((evaluate & Metadata.USER_DEFINED_AREA_FILTER)
+                              != 0);
+        boolean doGridColRow = ((evaluate & Metadata.GRID_COL_ROW_FILTER)
+                                != 0);
+        boolean doDownloadable = ((evaluate & Metadata.DOWNLOADABLE_FILTER)
+                                  != 0);
+
+        // work out the date range once for all the scenes (the months are
+        // 0-11 in the settings and 1-12 in the store)
+        boolean hasAcqDate = tocSensor.hasAcqDate;
+        int startMonth = settings.startMonth + 1;
+        int endMonth = settings.endMonth + 1;
+        boolean monthsWrapAround = (startMonth > endMonth);
+
+        UserDefinedArea userArea = null;
+        if (doUserArea && settings.userAreaEnabled)
+            userArea = userDefinedAreaDialog.getUserDefinedArea();
+
+        for (int i = 0; i < size; i++)
+        {
+            int flags = filterFlags[i];
+            Metadata scene = scenes[i];
+            Sensor sensor = scene.getSensor();
+
+            if (doDate)
+            {
+                boolean keep = !hasAcqDate;
+                if (!keep && (year[i] >= settings.startYear)
+                    && (year[i] <= settings.endYear))
+                {
+                    int m = month[i];
+                    if (!monthsWrapAround)
+                        keep = ((m >= startMonth) && (m <= endMonth));
+                    else
+                        keep = ((m >= startMonth) || (m <= endMonth));
+                }
+                flags = setFlag(flags, Metadata.DATE_FILTER, !keep);
+            }
+            if (doCloudCover)
+            {
+                flags = setFlag(flags, Metadata.CLOUD_COVER_FILTER,
+                                cloudCover[i] > settings.maxCloudCover);
+            }
+            if (doSceneList)
+            {
+                flags = setFlag(flags, Metadata.SCENE_LIST_FILTER,
+                            settings.sceneListEnabled
+                            && (sensor.sceneList.find(scene) == -1));
+            }
+            if (doDownloadable)
+            {
+                flags = setFlag(flags, Metadata.DOWNLOADABLE_FILTER,
+                            settings.downloadableEnabled
+                            && sensor.mightBeDownloadable
+                            && !scene.isDownloadable);
+            }
+            if (doQuality)
+            {
+                // scenes without a quality value keep their current setting
+                int qual = scene.getQuality();
+                if (qual >= 0)
+                {
+                    flags = setFlag(flags, Metadata.QUALITY_FILTER,
+                                    qual < settings.minQuality);
+                }
+            }
+            if (doDataVersion && sensor.hasDataVersions)
+            {
+                flags = setFlag(flags, Metadata.DATA_VERSION_FILTER,
+                            !(settings.dataVersion.equals("All")
+                              || scene.dataVersion.equals(
+                                                settings.dataVersion)));
+            }
+            if (doHidden)
+            {
+                flags = setFlag(flags, Metadata.HIDDEN_SCENE_FILTER,
+                                sensor.hiddenSceneList.find(scene) != -1);
+            }
+            if (doUserArea)
+            {
+                flags = setFlag(flags, Metadata.USER_DEFINED_AREA_FILTER,
+                            (userArea != null) && sensor.hasUserDefinedArea
+                            && !userArea.sceneIntersects(scene));
+            }
+            if (doGridColRow && sensor.hasGridColRowFilter)
+            {
+                boolean keep = (scene.gridCol >= settings.startGridCol)
+                            && (scene.gridCol <= settings.endGridCol)
+                            && (scene.gridRow >= settings.startGridRow)
+                            && (scene.gridRow <= settings.endGridRow);
+                flags = setFlag(flags, Metadata.GRID_COL_ROW_FILTER, !keep);
+            }
+
+            if (flags != filterFlags[i])
+                storeFlags(i, flags);
+        }
+    }
+
+    // helper method to set or clear a flag in a set of filter flags
+    //--------------------------------------------------------------
+    private static int setFlag(int flags, int flag, boolean filtered)
+    {
+        if (filtered)
+            return flags | flag;
+        else
+            return flags & ~flag;
+    }
+
+    // method to clear a filter flag for all the scenes
+    //-------------------------------------------------
+    void clearFilter(int flag)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            if ((filterFlags[i] & flag) != 0)
+                setFilter(i, flag, false);
+        }
+    }
+
+    // method to filter the scenes to meet a cloud cover restriction
+    //--------------------------------------------------------------
+    void filterToCloudCover(int maxCloudCover)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            setFilter(i, Metadata.CLOUD_COVER_FILTER,
+                      cloudCover[i] > maxCloudCover);
+        }
+    }
+
+    // method to filter the scenes to a date range.  Note the months are
+    // expected to be in the range of 0-11 when passed in.
+    //------------------------------------------------------------------
+    void filterToDateRange(int startYear, int endYear, int startMonth,
+                           int endMonth)
+    {
+        // adjust the start and end month to be in the range of 1-12
+        startMonth++;
+        endMonth++;
+
+        // determine if the range of months crosses the year boundary
+        boolean monthsWrapAround = (startMonth > endMonth);
+
+        for (int i = 0; i < size; i++)
+        {
+            boolean keep = false;
+            if ((year[i] >= startYear) && (year[i] <= endYear))
+            {
+                int m = month[i];
+                if (!monthsWrapAround)
+                    keep = ((m >= startMonth) && (m <= endMonth));
+                else
+                    keep = ((m >= startMonth) || (m <= endMonth));
+            }
+            setFilter(i, Metadata.DATE_FILTER, !keep);
+        }
+    }
+}
@@ -1409,16 +1409,7 @@ public class SearchLimitDialog extends JDialog implements WindowListener,
         {
             TOC cell = toc[cellNum];
 
-            // protect against invalid array checking
-            if (cell.valid)
-            {
-                for (int num = 0; num < cell.scenes.length; num++)
-                {
-                    Metadata scene = cell.scenes[num];
-                    if (scene.visible)
-                            sum++;
-                }
-            }
+            sum += cell.getVisibleSceneCount();
         }
         return sum;
     }
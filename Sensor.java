@@ -5,9 +5,11 @@
 //-----------------------------------------------------------------------------
 import java.awt.Color;
 import java.awt.Dimension;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.Hashtable;
 import java.util.Vector;
 
 public abstract class Sensor
@@ -121,6 +123,18 @@ public abstract class Sensor
     public SceneList hiddenSceneList;   // hidden scene list for this sensor
     public int locatorMap;        // locator map to use
     private DecimalFormat threeDigitFormat; // three digit number formatter
+    private volatile CellIndex cellIndex; // cells with inventory (null if
+                                  // the index is not available)
+    private volatile boolean cellIndexRead; // flag that reading the index
+                                  // was tried
+    private Object cellIndexLock = new Object(); // lock held while reading
+                                  // the cell index
+    private Hashtable emptyCells; // cells found to have no TOC file
+    private boolean binaryTocFound; // flag that a binary TOC file was found
+                                  // for this sensor
+    private boolean binaryTocMissing; // flag that the first binary TOC
+                                  // requested was missing, so the sensor's
+                                  // inventory hasn't been converted
 
     // define the valid values for the logoLocation
     public final static int LOGO_LOWER_LEFT = 1;
@@ -279,6 +293,102 @@ public abstract class Sensor
         cell.read(this);
     }
 
+    // method to return whether a cell might have inventory.  Returns false
+    // if the cell is not in the sensor's cell index or its TOC file was
+    // already found to be missing, so the TOC doesn't need to be requested.
+    // The cell index is read the first time this is called.
+    //----------------------------------------------------------------------
+    public boolean hasInventory(int gridCol, int gridRow)
+    {
+        CellIndex index = getCellIndex();
+        if ((index != null) && !index.hasInventory(gridCol, gridRow))
+            return false;
+        synchronized (this)
+        {
+            return (emptyCells == null)
+                || !emptyCells.containsKey(gridCol + "/" + gridRow);
+        }
+    }
+
+    // helper method to return the cell index, reading it the first time.
+    // The index is read while holding its own lock rather than the
+    // sensor's, so the read doesn't block the other uses of the sensor.
+    // The threads needing the index wait for the first read to finish.
+    //-------------------------------------------------------------------
+    private CellIndex getCellIndex()
+    {
+        if (!cellIndexRead)
+        {
+            synchronized (cellIndexLock)
+            {
+                if (!cellIndexRead)
+                {
+                    try
+                    {
+                        cellIndex = CellIndex.load(this);
+                        if (applet.verboseOutput)
+                        {
+                            System.out.println("Cell index for "
+                                + sensorName + ": "
+                                + cellIndex.getCellCount() + " cells");
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        // no index for this sensor, so every cell is
+                        // requested
+                        if (applet.verboseOutput)
+                            System.out.println("Exception:  "+e.getMessage());
+                    }
+                    cellIndexRead = true;
+                }
+            }
+        }
+        return cellIndex;
+    }
+
+    // method to return whether the binary TOC file should be requested for
+    // a cell.  Returns false once a binary file has been found missing
+    // before any were found, since the TocConverter tool converts a whole
+    // sensor's inventory at once.
+    //---------------------------------------------------------------------
+    public synchronized boolean mightHaveBinaryTOC()
+    {
+        return !binaryTocMissing;
+    }
+
+    // method to record whether a binary TOC file was found for a cell
+    //----------------------------------------------------------------
+    public synchronized void setBinaryTOCFound(boolean found)
+    {
+        if (found)
+            binaryTocFound = true;
+        else if (!binaryTocFound)
+            binaryTocMissing = true;
+    }
+
+    // method to remember a cell's TOC file does not exist so it isn't
+    // requested again
+    //----------------------------------------------------------------
+    public synchronized void setNoInventory(int gridCol, int gridRow)
+    {
+        if (emptyCells == null)
+            emptyCells = new Hashtable();
+        String key = gridCol + "/" + gridRow;
+        emptyCells.put(key, key);
+    }
+
+    // method to forget the cells found to have no TOC file so they are
+    // requested again.  Whether the inventory has binary TOC files is
+    // checked again too.
+    //-----------------------------------------------------------------
+    public synchronized void clearNoInventory()
+    {
+        emptyCells = null;
+        binaryTocFound = false;
+        binaryTocMissing = false;
+    }
+
     // abstract method to return an image file name for a given metadata 
     // reference and resolution
     //  Returns: full file name, including directory
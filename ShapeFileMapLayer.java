@@ -683,20 +683,33 @@ public class ShapeFileMapLayer extends TiledMapLayer
 
             // shapes are available, so translate the origin one pixel 
             // down and left (y increases down) and draw the black 
-            // shadow underneath the shapes
-            g2.translate(-1,1);
-            g2.setColor(Color.BLACK);
+            // shadow underneath the shapes.  The shadow is skipped and a
+            // stroke that is cheaper to draw is used at reduced quality.
+            boolean reduced = RenderQuality.isReduced(g);
+            int firstLoop = 0;
+            if (reduced)
+            {
+                firstLoop = 1;
+                g2.setColor(color);
+                g2.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_BUTT,
+                                             BasicStroke.JOIN_BEVEL));
+            }
+            else
+            {
+                g2.translate(-1,1);
+                g2.setColor(Color.BLACK);
 
-            // set the graphics object to draw lines of the correct width
-            g2.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_ROUND,
-                                         BasicStroke.JOIN_ROUND));
+                // set the graphics object to draw lines of the correct width
+                g2.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_ROUND,
+                                             BasicStroke.JOIN_ROUND));
+            }
 
             // create a path object for drawing lines
             float[] coords = new float[6];
 
             // loop twice, once to draw the black shadow and once to draw the
             // actual line
-            for (int loops = 0; loops < 2; loops++)
+            for (int loops = firstLoop; loops < 2; loops++)
             {
                 // draw all the shapes
                 for (int i = 0; i < numShapes; i++)
@@ -28,6 +28,7 @@ import java.awt.Point;
 import java.awt.Polygon;
 import java.net.URL;
 import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
@@ -39,6 +40,8 @@ import java.util.Vector;
 public class TOC
 {
     public Metadata[] scenes;   // array of metadata for each scene
+    SceneStore store;           // columns of the scanned scene values, in the
+                                // same order as the scenes array
     public String cellDir;      // URL to this cell directory
     public boolean hasMetrics;  // flags metrics are available
     public boolean hasLines;    // flags linework is available
@@ -63,6 +66,9 @@ public class TOC
     private int[] sampOffset;   // temporary sample offsets for 4 corners
     Dimension maxSceneSize;     // maximum scene dimensions in meters
     private Sensor currSensor;  // stores the sensor for the TOC
+    String cacheKey;            // key for the TOC in the TOC cache (null if
+                                // the TOC should not be cached)
+    long readTime;              // time the TOC was read (in milliseconds)
 
     // Constructor for the Table of Contents class
     //--------------------------------------------
@@ -92,6 +98,7 @@ public class TOC
         {
             scenes[i] = new Metadata(toc.scenes[i]);            
         }
+        store = SceneStore.build(scenes, scenes.length);
         cellDir = new String(toc.cellDir);
         hasMetrics = toc.hasMetrics;
         hasLines = toc.hasLines;
@@ -120,8 +127,6 @@ public class TOC
     //-----------------
     public void read(Sensor currSensor) 
     {
-        String dataLine;                  // A line of data from the TOC file...
-        int tempVal;
         double offsetRes = currSensor.getOffsetResolution();
         this.currSensor = currSensor;
 
@@ -134,15 +139,86 @@ public class TOC
         numImg = 0;
         maxSceneSize = currSensor.getNominalSceneSize();
 
-        // Build cell directory name
+        // Build cell directory name, skipping the request for cells known
+        // to have no inventory (the check is made first since it may need
+        // to build the sensor's cell index)
+        boolean hasInventory = currSensor.hasInventory(gridCol,gridRow);
         cellDir = currSensor.getCellDirectory(gridCol,gridRow);
+        if (!hasInventory)
+            return;
+
+        // take the TOC from the bundle for the cell's block if there is one
+        // since it saves a request per cell
+        BinaryTOC binary = null;
+        TocBundle bundle = TocBundle.getBundle(appletURL, currSensor,
+                                               gridCol, gridRow);
+        // (a cell missing from the bundle may have been added since the
+        // bundle was built, so its own TOC is read instead)
+        if ((bundle != null) && bundle.contains(gridCol, gridRow))
+        {
+            try
+            {
+                binary = bundle.getCell(gridCol, gridRow);
+            }
+            catch (IOException e)
+            {
+                // fall back to reading the cell's own file
+                System.out.println("Exception:  "+e.getMessage());
+            }
+        }
+
+        // otherwise prefer the binary version of the TOC file if it is
+        // available since it decodes much faster than the text version.
+        // The request is skipped for sensors whose inventory hasn't been
+        // converted.
+        if ((binary == null) && currSensor.mightHaveBinaryTOC())
+        {
+            try
+            {
+                binary = BinaryTOC.load(new URL(appletURL, 
+                                          cellDir+"/"+BinaryTOC.FILE_NAME));
+                currSensor.setBinaryTOCFound(binary != null);
+            }
+            catch (IOException e)
+            {
+                // fall back to the text file if the binary file can't be
+                // read
+                System.out.println("Exception:  "+e.getMessage());
+            }
+        }
+        if (binary != null)
+        {
+            if (!readBinary(binary, currSensor, offsetRes))
+                return;
+        }
+        else if (!readText(currSensor, offsetRes))
+            return;
+
+        // build the date and entity ID indexes for the scenes
+        store.buildIndexes();
+
+        // calculate the min/max X/Y extents of this gridCol/gridRow.
+        findCoordinateExtents(offsetRes);
+
+        // if any images are available, the cell is valid
+        if (numImg > 0)
+            valid = true;
+    }
+
+    // helper method to read the text version of the TOC file.  Returns
+    // false if the file could not be read.
+    //-----------------------------------------------------------------
+    private boolean readText(Sensor currSensor, double offsetRes)
+    {
+        String dataLine;                  // A line of data from the TOC file...
+        int tempVal;
 
         BufferedReader data = null;
         try 
         {
             // open the TOC file
             URL tocURL = new URL(appletURL, cellDir+"/TOC");
-            InputStream is = tocURL.openStream();
+            InputStream is = TocDiskCache.openStream(tocURL);
             data = new BufferedReader(new InputStreamReader(is));
 
             // Get the gridCol, gridRow, projection code, ancilary file flags,
@@ -155,7 +231,7 @@ public class TOC
                     "Error reading Table of Contents file for gridCol/gridRow "
                     + gridCol + "/" + gridRow);
                 data.close();
-                return;
+                return false;
             }
             try 
             {
@@ -167,7 +243,7 @@ public class TOC
                         "Error in TOC file -- incorrect Path specified.");
                     System.out.println(" " + tempVal + " " + gridCol + "\n");
                     data.close();
-                    return;
+                    return false;
                 }
                 tempVal = navModel.getRowNumberFromString(st.nextToken());
                 if (tempVal != gridRow) 
@@ -175,7 +251,7 @@ public class TOC
                     System.out.println(
                         "Error in TOC file -- incorrect Row specified.");
                     data.close();
-                    return;
+                    return false;
                 }
                 projCode = Integer.parseInt(st.nextToken());
                 tempVal = Integer.parseInt(st.nextToken());
@@ -194,19 +270,20 @@ public class TOC
             {
                 System.out.println("Exception:  "+ e.getMessage());
                 data.close();
-                return;
+                return false;
             }
             catch (NumberFormatException e) 
             {
                 System.out.println("Exception:  "+ e.getMessage());
                 data.close();
-                return;
+                return false;
             }
 
             // Get the date specific info for each image over this
             // gridCol/gridRow
             //----------------------------------------------------
             scenes = new Metadata[numImg];
+            store = new SceneStore(numImg);
 
             for (int i=0; i<numImg; i++) 
             {
@@ -217,12 +294,12 @@ public class TOC
                     "Error reading Table of Contents file for gridCol/gridRow "
                         + gridCol + "/" + gridRow);
                     data.close();
-                    return;
+                    return false;
                 }
                 try 
                 {
                     scenes[i] = new Metadata(dataLine, currSensor,gridCol,
-                                             gridRow);
+                                             gridRow, store);
 
                     scenes[i].calculateSceneCenter(offsetRes);
                 }
@@ -230,13 +307,13 @@ public class TOC
                 {
                     System.out.println("Exception:  "+ e.getMessage());
                     data.close();
-                    return;
+                    return false;
                 }
                 catch (NumberFormatException e) 
                 {
                     System.out.println("Exception:  "+ e.getMessage());
                     data.close();
-                    return;
+                    return false;
                 }
             }
             
@@ -254,15 +331,80 @@ public class TOC
                 try {data.close();} catch (Exception e1){};
                 System.out.println("Exception:  "+e.getMessage());
             }
-            return;
+            else if (e instanceof FileNotFoundException)
+            {
+                // remember the cell has no inventory so it isn't requested
+                // again
+                currSensor.setNoInventory(gridCol,gridRow);
+            }
+            return false;
         }
 
-        // calculate the min/max X/Y extents of this gridCol/gridRow.
-        findCoordinateExtents(offsetRes);
+        return true;
+    }
 
-        // if any images are available, the cell is valid
-        if (numImg > 0)
-            valid = true;
+    // helper method to read the binary version of the TOC file.  Returns
+    // false if the file contents are not valid.
+    //---------------------------------------------------------------
+    private boolean readBinary(BinaryTOC binary, Sensor currSensor,
+                               double offsetRes)
+    {
+        // verify the gridCol/gridRow and get the projection code and 
+        // ancilary file flags
+        try
+        {
+            int tempVal = navModel.getColumnNumberFromString(
+                                            binary.getColumnString());
+            if (tempVal != gridCol) 
+            {
+                System.out.println(
+                    "Error in TOC file -- incorrect Path specified.");
+                System.out.println(" " + tempVal + " " + gridCol + "\n");
+                return false;
+            }
+            tempVal = navModel.getRowNumberFromString(binary.getRowString());
+            if (tempVal != gridRow) 
+            {
+                System.out.println(
+                    "Error in TOC file -- incorrect Row specified.");
+                return false;
+            }
+        }
+        catch (NumberFormatException e) 
+        {
+            System.out.println("Exception:  "+ e.getMessage());
+            return false;
+        }
+        projCode = binary.projCode;
+        hasLines = binary.hasLines;
+        hasMetrics = binary.hasMetrics;
+        numImg = binary.numImg;
+
+        // decode the scenes directly from the binary columns
+        scenes = new Metadata[numImg];
+        store = new SceneStore(numImg);
+        for (int i = 0; i < numImg; i++) 
+        {
+            try 
+            {
+                scenes[i] = new Metadata(binary.getSceneFields(i), currSensor,
+                                         gridCol, gridRow, store);
+
+                scenes[i].calculateSceneCenter(offsetRes);
+            }
+            catch (NoSuchElementException e) 
+            {
+                System.out.println("Exception:  "+ e.getMessage());
+                return false;
+            }
+            catch (NumberFormatException e) 
+            {
+                System.out.println("Exception:  "+ e.getMessage());
+                return false;
+            }
+        }
+
+        return true;
     }
 
     // helper method to calculate the coordinate extents for the cell
@@ -296,13 +438,13 @@ public class TOC
                 for (int j = 0; j < 4; j++)
                 {
                     int temp = scene.ulY 
-                             - (int)Math.round(scene.lineOffset[j] * offsetRes);
+                        - (int)Math.round(scene.getLineOffset(j) * offsetRes);
                     if (temp < sceneMinY)
                         sceneMinY = temp;
                     if (temp > sceneMaxY)
                         sceneMaxY = temp;
                     temp = scene.ulX 
-                         + (int)Math.round(scene.sampOffset[j] * offsetRes);
+                        + (int)Math.round(scene.getSampOffset(j) * offsetRes);
                     if (temp < sceneMinX)
                         sceneMinX = temp;
                     if (temp > sceneMaxX)
@@ -341,8 +483,29 @@ public class TOC
         if (!valid)
             return;
 
-        for (int i = 0; i < numImg; i++)
-            scenes[i].clearFilter(flag);
+        store.clearFilter(flag);
+    }
+
+    // method to apply a set of search limits to the scenes in the TOC.  Only
+    // the filters whose settings changed since the last time are evaluated.
+    //------------------------------------------------------------------------
+    public void applyFilters(SceneFilterSettings settings,
+                             UserDefinedAreaDialog userDefinedAreaDialog)
+    {
+        if (!valid)
+            return;
+
+        store.applyFilters(settings, currSensor, userDefinedAreaDialog);
+    }
+
+    // method to return the number of visible scenes in the TOC
+    //---------------------------------------------------------
+    public int getVisibleSceneCount()
+    {
+        if (!valid)
+            return 0;
+
+        return store.countVisible();
     }
 
     // method to filter the scenes in the TOC to the viewport passed in
@@ -364,8 +527,7 @@ public class TOC
         if (!valid)
             return;
 
-        for (int i = 0; i < numImg; i++)
-            scenes[i].filterToCloudCover(maxCloudCover);
+        store.filterToCloudCover(maxCloudCover);
     }
 
     // method to filter the scenes in the TOC to a date range
@@ -376,8 +538,11 @@ public class TOC
         if (!valid)
             return;
 
-        for (int i = 0; i < numImg; i++)
-            scenes[i].filterToDateRange(startYear,endYear,startMonth,endMonth);
+        // if there is no acquisition date, date range cannot be filtered on
+        if (currSensor.hasAcqDate)
+            store.filterToDateRange(startYear,endYear,startMonth,endMonth);
+        else
+            store.clearFilter(Metadata.DATE_FILTER);
     }
     
     // method to filter the scenes in the TOC to a grid column & grid row range
@@ -479,22 +644,10 @@ public class TOC
 
         if (valid)
         {
-            // find the scene in the scene array
-            for (int i = 0; i < numImg; i++)
-            {
-                Metadata currScene = scenes[i];
-
-                // use the date as a first level, fast test
-                if (scene.date == currScene.date)
-                {
-                    // the date agrees, so check the whole entity ID
-                    if (scene.entityID.equals(scenes[i].entityID))
-                    {
-                        foundAt = i;
-                        break;
-                    }
-                }
-            }
+            // look up the scene by entity ID and make sure the date agrees
+            foundAt = store.findEntity(scene.entityID);
+            if ((foundAt != -1) && (store.date[foundAt] != scene.date))
+                foundAt = -1;
         }
 
         return foundAt;
@@ -504,25 +657,10 @@ public class TOC
     //--------------------------------------------------------------
     public int findDate(int year, int jDate)
     {
-        int foundIndex = -1;
-        int foundDays = 10000000;
+        if (!valid)
+            return -1;
 
-        // find the scene in the scene array
-        for (int i = 0; i < numImg; i++)
-        {
-            Metadata scene = scenes[i];
-            
-            if (scene.visible)
-            {
-                int days = scene.daysBetween(year, jDate);
-                if (days < foundDays)
-                {
-                    foundDays = days;
-                    foundIndex = i;
-                }
-            }
-        }
-        return foundIndex;
+        return store.findClosestVisible(year, jDate);
     }
 
     // method to find the nearest visible date to the current date index
@@ -534,31 +672,12 @@ public class TOC
             return;
 
         // if the current scene is visible, nothing to do
-        if (scenes[currentDateIndex].visible)
+        if (store.isVisible(currentDateIndex))
             return;
 
-        int foundBefore = -1;
-        int foundAfter = -1;
-
-        // look for the first visible scene before the current date
-        for (int i = currentDateIndex; i >= 0; i--)
-        {
-            if (scenes[i].visible)
-            {
-                foundBefore = i;
-                break;
-            }
-        }
-
-        // look for the first visible scene after the current date
-        for (int i = currentDateIndex + 1; i < numImg; i++)
-        {
-            if (scenes[i].visible)
-            {
-                foundAfter = i;
-                break;
-            }
-        }
+        // look for the first visible scenes before and after the current date
+        int foundBefore = store.previousVisible(currentDateIndex);
+        int foundAfter = store.nextVisible(currentDateIndex + 1);
 
         if ((foundBefore != -1) && (foundAfter == -1))
         {
@@ -574,10 +693,10 @@ public class TOC
         {
             // visible scenes before and after the current one, so look for the
             // closest date
-            int daysBefore = scenes[currentDateIndex].daysBetween(
-                        scenes[foundBefore].year, scenes[foundBefore].jDate);
-            int daysAfter = scenes[currentDateIndex].daysBetween(
-                        scenes[foundAfter].year, scenes[foundAfter].jDate);
+            int daysBefore = store.daysBetween(currentDateIndex,
+                        store.year[foundBefore], store.jDate[foundBefore]);
+            int daysAfter = store.daysBetween(currentDateIndex,
+                        store.year[foundAfter], store.jDate[foundAfter]);
 
             if (daysBefore < daysAfter)
                 currentDateIndex = foundBefore;
@@ -618,27 +737,13 @@ public class TOC
         if (!valid)
             return;
 
-        // get the first index with the requested date and sensor
-        int startIndex = getIndexOfDate(date, sensor);
-
-        // if no scenes with the date were found, return without adding
-        // anything to the scenesOnDate vector
-        if (startIndex == -1)
-            return;
-
-        // find the last index with the requested date
-        int endIndex = startIndex;
-        for (int i = startIndex; i < numImg; i++)
-        {
-            if (scenes[i].date != date)
-                break;
-            endIndex = i;
-        }
-
         // insert the scenes from the correct sensor with the requested date
         // into the vector in the correct order
-        for (int i = startIndex; i <= endIndex; i++)
+        for (int pos = store.firstPositionOfDate(date); pos < numImg; pos++)
         {
+            int i = store.sceneAt(pos);
+            if (store.date[i] != date)
+                break;
             Metadata scene = scenes[i];
 
             // only take scenes that are the requested sensor (to handle case
@@ -671,27 +776,16 @@ public class TOC
         if (!valid)
             return -1;
 
-        for (int i = 0; i < numImg; i++)
+        // step through the scenes on the date in date index order
+        for (int pos = store.firstPositionOfDate(date); pos < numImg; pos++)
         {
-            Metadata scene = scenes[i];
-
-            // if the date hasn't been reached yet, go to the next scene
-            if (scene.date < date)
-                continue;
-            else if (date == scene.date)
-            {
-                if (sensor == scene.getSensor())
-                {
-                    // a matching date and sensor was found, so return its index
-                    return i;
-                }
-            }
-            else
-            {
-                // the date is after the target date, so break out of the loop
-                // (since the scenes are from oldest to newest order, no
-                // scenes matching the date will be found anymore)
+            int i = store.sceneAt(pos);
+            if (store.date[i] != date)
                 break;
+            if (sensor == scenes[i].getSensor())
+            {
+                // a matching date and sensor was found, so return its index
+                return i;
             }
         }
 
@@ -784,11 +878,89 @@ public class TOC
             }
         }
 
+        // build the scene store for the merged scenes
+        store = SceneStore.build(scenes, numImg);
+
         // update the valid flag
         if (numImg > 0)
             valid = true;
     }
 
+    // method to return the base URL the TOC is read from
+    //---------------------------------------------------
+    URL getAppletURL()
+    {
+        return appletURL;
+    }
+
+    // method to replace the contents of this TOC with the TOCs read for the
+    // same cell from several datasets.  The scenes are combined with a
+    // single merge into date order.  The header information comes from the
+    // first valid TOC (or the last one if none are valid), matching what
+    // reading the datasets one after another and adding them would give.
+    //----------------------------------------------------------------------
+    public void merge(TOC[] parts)
+    {
+        int first = parts.length - 1;
+        int count = 0;
+        for (int i = parts.length - 1; i >= 0; i--)
+        {
+            if (parts[i].valid)
+            {
+                first = i;
+                count += parts[i].numImg;
+            }
+        }
+
+        // take the header information from the first valid TOC
+        TOC header = parts[first];
+        currSensor = header.currSensor;
+        navModel = header.navModel;
+        maxSceneSize = header.maxSceneSize;
+        cellDir = header.cellDir;
+        projCode = header.projCode;
+        hasLines = header.hasLines;
+        hasMetrics = header.hasMetrics;
+        minX = header.minX;
+        maxX = header.maxX;
+        minY = header.minY;
+        maxY = header.maxY;
+        sceneCornersSet = false;
+        valid = false;
+        numImg = 0;
+        scenes = null;
+        store = null;
+        if (count == 0)
+            return;
+
+        // merge the scenes from all the valid TOCs, each of which is in
+        // oldest to newest order.  Scenes with the same date are taken from
+        // the later datasets first.
+        int[] next = new int[parts.length];
+        scenes = new Metadata[count];
+        for (int i = 0; i < count; i++)
+        {
+            int oldest = -1;
+            for (int part = first; part < parts.length; part++)
+            {
+                if (!parts[part].valid || (next[part] == parts[part].numImg))
+                    continue;
+                if ((oldest == -1) || (parts[part].scenes[next[part]].date
+                                <= parts[oldest].scenes[next[oldest]].date))
+                {
+                    oldest = part;
+                }
+            }
+            scenes[i] = parts[oldest].scenes[next[oldest]];
+            next[oldest]++;
+        }
+        numImg = count;
+
+        // build the scene store for the merged scenes
+        store = SceneStore.build(scenes, numImg);
+        valid = true;
+    }
+
     // method to remove the scenes that are not downloadable.  The original
     // use for this routine is to convert a Landsat SLC-off scene list to 
     // the downloadable subset for Landsat L1T.
@@ -813,6 +985,7 @@ public class TOC
                 for (int i = 0; i < numImg; i++)
                     scenes[i].cleanup();
                 scenes = null;
+                store = null;
                 numImg = 0;
             }
             else
@@ -839,6 +1012,25 @@ public class TOC
                 // set the new scenes array
                 scenes = newScenes;
                 numImg = num;
+                store = SceneStore.build(scenes, numImg);
+            }
+        }
+    }
+
+    // method to release the images loaded for the scenes in the TOC
+    //--------------------------------------------------------------
+    public void releaseImages()
+    {
+        for (int i = 0; i < numImg; i++)
+        {
+            Metadata scene = scenes[i];
+            if ((scene != null) && (scene.image != null))
+            {
+                scene.image.flush();
+                scene.image = null;
+                scene.imageRes = -1;
+                scene.imageRegion = null;
+                scene.imageFullSize = null;
             }
         }
     }
@@ -863,6 +1055,7 @@ public class TOC
             }
         }
         numImg = 0;
+        store = null;
     }
 
     // dump() is a debug routine that writes the contents of the TOC to the
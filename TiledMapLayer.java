@@ -29,6 +29,14 @@ public abstract class TiledMapLayer extends MapLayer
         fileCache = new MapLayerFileCache();
     }
 
+    // method to return true since the tiled layers are only changed when they
+    // are read or clipped
+    //-----------------------------------------------------------------------
+    public boolean canCacheDrawing()
+    {
+        return true;
+    }
+
     // method to find the 15 degree tile a latitude or longitude value belongs
     // in.
     //   Returns: 15 degree tile this belongs to
@@ -0,0 +1,260 @@
+// TocBundle.java implements a reader for TOC bundle files.  A bundle holds
+// the binary TOC files (see BinaryTOC) for all the cells with inventory in
+// an aligned block of BLOCK_SIZE x BLOCK_SIZE grid cells, so the TOCs for a
+// mosaic can be read with one or two requests instead of one per cell.  The
+// bundles are created from the inventory tree with the TocBundleBuilder
+// tool and are stored in the DIR_NAME directory of the sensor directory.
+//
+// File layout (all values are big-endian 32 bit integers):
+//    magic number (TocBundle.MAGIC)
+//    format version (TocBundle.VERSION)
+//    block size
+//    number of cells in the bundle (numCells)
+//    offset table with numCells entries of:
+//        grid column, grid row, byte offset of the binary TOC from the
+//        start of the file, length of the binary TOC in bytes
+//    binary TOC files
+//
+// A bundle is a snapshot of the inventory when it was built, so the bundles
+// must be rebuilt with TocBundleBuilder as part of every inventory update.
+// A cell in a bundle is always read from the bundle, even if the cell's
+// own TOC file is newer.  A cell missing from its block's bundle is read
+// from its own TOC file, so cells added since the bundle was built are
+// still shown.
+//
+// Recently read bundles are kept in a small cache shared by all the
+// sensors.  A bundle found to be missing is remembered in the cache so it
+// isn't requested again, and the TOC files are read individually instead.
+//
+//  Note: getBundle is called from the TOC fetch threads.  Only one thread
+//        reads a bundle, with the others needing it waiting for the result.
+//--------------------------------------------------------------------------
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class TocBundle
+{
+    // name of the directory holding the bundles in a sensor directory
+    public static final String DIR_NAME = "tocbundles";
+
+    // identification of the file format
+    public static final int MAGIC = 0x4754424E; // "GTBN"
+    public static final int VERSION = 1;
+
+    // number of grid columns and rows in a block
+    public static final int BLOCK_SIZE = 4;
+
+    // maximum number of bundles to keep in memory
+    private static final int MAX_BUNDLES = 24;
+
+    private ByteBuffer buffer;  // contents of the bundle file
+    private Hashtable cells;    // offset table entries (int[] {offset,
+                                // length}) keyed by "col/row"
+
+    // class to hold a bundle in the cache while it is being read
+    //------------------------------------------------------------
+    private static class CacheEntry
+    {
+        TocBundle bundle;       // bundle read (null if missing)
+        boolean done;           // flag that reading the bundle is complete
+    }
+    private static LinkedHashMap cache = new LinkedHashMap(16, 0.75f, true);
+
+    // Constructor for the TOC bundle.  Throws an IOException if the contents
+    // of the buffer are not a valid bundle file.
+    //-----------------------------------------------------------------------
+    TocBundle(ByteBuffer buffer) throws IOException
+    {
+        this.buffer = buffer;
+        try
+        {
+            if (buffer.getInt(0) != MAGIC)
+                throw new IOException("Not a TOC bundle file");
+            int version = buffer.getInt(4);
+            if (version != VERSION)
+            {
+                throw new IOException("Unsupported TOC bundle version "
+                                      + version);
+            }
+            if (buffer.getInt(8) != BLOCK_SIZE)
+                throw new IOException("Unsupported TOC bundle block size");
+            int numCells = buffer.getInt(12);
+            if (numCells < 0)
+                throw new IOException("Corrupt TOC bundle header");
+
+            cells = new Hashtable(numCells * 2 + 1);
+            int offset = 16;
+            for (int i = 0; i < numCells; i++)
+            {
+                int gridCol = buffer.getInt(offset);
+                int gridRow = buffer.getInt(offset + 4);
+                int[] entry = {buffer.getInt(offset + 8),
+                               buffer.getInt(offset + 12)};
+                if ((entry[0] < 0) || (entry[1] < 0)
+                    || (entry[0] + entry[1] > buffer.limit()))
+                {
+                    throw new IOException("Corrupt TOC bundle offset table");
+                }
+                cells.put(gridCol + "/" + gridRow, entry);
+                offset += 16;
+            }
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new IOException("Truncated TOC bundle file");
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IOException("Truncated TOC bundle file");
+        }
+    }
+
+    // method to return the block number for a grid column or row
+    //-----------------------------------------------------------
+    public static int getBlock(int gridValue)
+    {
+        if (gridValue >= 0)
+            return gridValue / BLOCK_SIZE;
+        return -((-gridValue + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    }
+
+    // method to return the file name of a bundle relative to the sensor
+    // directory
+    //------------------------------------------------------------------
+    public static String getFileName(int blockCol, int blockRow)
+    {
+        return DIR_NAME + "/b" + blockCol + "_" + blockRow + ".bin";
+    }
+
+    // method to return the bundle holding a cell for a sensor.  Returns null
+    // if there is no bundle for the cell's block.
+    //-----------------------------------------------------------------------
+    public static TocBundle getBundle(URL appletURL, Sensor sensor,
+                                      int gridCol, int gridRow)
+    {
+        String name = sensor.getSensorDirectory() + "/"
+                    + getFileName(getBlock(gridCol), getBlock(gridRow));
+        CacheEntry entry;
+        synchronized (cache)
+        {
+            entry = (CacheEntry)cache.get(name);
+            if (entry == null)
+            {
+                entry = new CacheEntry();
+                cache.put(name, entry);
+
+                // discard the least recently used bundles
+                Iterator entries = cache.values().iterator();
+                while ((cache.size() > MAX_BUNDLES) && entries.hasNext())
+                {
+                    entries.next();
+                    entries.remove();
+                }
+            }
+        }
+
+        // read the bundle if no other thread has
+        synchronized (entry)
+        {
+            if (!entry.done)
+            {
+                try
+                {
+                    entry.bundle = load(new URL(appletURL, name));
+                    entry.done = true;
+                }
+                catch (FileNotFoundException e)
+                {
+                    // no bundle for this block
+                    entry.done = true;
+                }
+                catch (IOException e)
+                {
+                    // leave it to be tried again by the next read
+                    System.out.println("Exception:  "+e.getMessage());
+                }
+            }
+            return entry.bundle;
+        }
+    }
+
+    // method to empty the cache of bundles so they are read again
+    //------------------------------------------------------------
+    public static void clearCache()
+    {
+        synchronized (cache)
+        {
+            cache.clear();
+        }
+    }
+
+    // helper method to read a bundle file from a URL.  Throws a
+    // FileNotFoundException if the bundle does not exist.
+    //----------------------------------------------------------
+    private static TocBundle load(URL url) throws IOException
+    {
+        InputStream is = TocDiskCache.openStream(url);
+        try
+        {
+            // read the entire file into one buffer, growing it as needed
+            int length = is.available();
+            byte[] data = new byte[(length > 0) ? length : 262144];
+            int size = 0;
+            while (true)
+            {
+                if (size == data.length)
+                {
+                    // only grow the buffer if there is more to read
+                    int next = is.read();
+                    if (next < 0)
+                        break;
+                    byte[] temp = new byte[data.length * 2];
+                    System.arraycopy(data, 0, temp, 0, size);
+                    data = temp;
+                    data[size++] = (byte)next;
+                }
+                int count = is.read(data, size, data.length - size);
+                if (count < 0)
+                    break;
+                size += count;
+            }
+            return new TocBundle(ByteBuffer.wrap(data, 0, size).slice());
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    // method to return whether the bundle holds the TOC for a cell.  Cells
+    // in the bundle's block that are not in the bundle had no inventory when
+    // the bundle was built.
+    //-----------------------------------------------------------------------
+    public boolean contains(int gridCol, int gridRow)
+    {
+        return cells.containsKey(gridCol + "/" + gridRow);
+    }
+
+    // method to return the binary TOC for a cell.  Returns null if the
+    // cell is not in the bundle.  Throws an IOException if the binary TOC
+    // is not valid.
+    //--------------------------------------------------------------------
+    public BinaryTOC getCell(int gridCol, int gridRow) throws IOException
+    {
+        int[] entry = (int[])cells.get(gridCol + "/" + gridRow);
+        if (entry == null)
+            return null;
+
+        ByteBuffer cell = buffer.duplicate();
+        cell.position(entry[0]);
+        cell.limit(entry[0] + entry[1]);
+        return new BinaryTOC(cell.slice());
+    }
+}
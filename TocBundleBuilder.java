@@ -0,0 +1,273 @@
+// TocBundleBuilder.java is a command line tool that packs the TOC files of
+// a sensor's inventory tree (i.e. <sensor>/<col>/<row>/TOC) into the
+// bundle files read by the TocBundle class, one bundle for each block of
+// cells that has inventory.  The binary TOC file for a cell is used if it
+// is current, otherwise the text file is converted.  The navigation model
+// class of the sensor is needed to find the grid cell of each TOC file.
+// Bundles for blocks that no longer have inventory are removed.  It is not
+// part of the applet.
+//
+// The applet reads a cell from its bundle in preference to the cell's own
+// TOC file, so this tool must be run after every inventory update, or
+// newly acquired scenes won't be shown until it is.
+//
+// Usage: java TocBundleBuilder navigationModelClass sensorDirectory...
+//    for example: java TocBundleBuilder WRS2Model l7 l5 l4tm
+//---------------------------------------------------------------------------
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+public class TocBundleBuilder
+{
+    private NavigationModel navModel; // navigation model for the grid cells
+
+    // class to hold the binary TOC for one cell while building the bundles
+    //---------------------------------------------------------------------
+    private static class Cell
+    {
+        int gridCol;
+        int gridRow;
+        byte[] data;            // binary TOC file contents
+    }
+
+    // constructor
+    //------------
+    TocBundleBuilder(NavigationModel navModel)
+    {
+        this.navModel = navModel;
+    }
+
+    // method to write the bundles for a sensor directory.  Returns the number
+    // of bundles written.
+    //------------------------------------------------------------------------
+    public int build(File sensorDir) throws IOException
+    {
+        File[] cols = sensorDir.listFiles();
+        if (cols == null)
+            throw new IOException(sensorDir + " is not a directory");
+        Arrays.sort(cols);
+
+        // group the cells by block
+        Hashtable blocks = new Hashtable();
+        for (int i = 0; i < cols.length; i++)
+        {
+            File[] rows = cols[i].listFiles();
+            if ((rows == null)
+                || cols[i].getName().equals(TocBundle.DIR_NAME))
+            {
+                continue;
+            }
+            Arrays.sort(rows);
+
+            for (int j = 0; j < rows.length; j++)
+            {
+                Cell cell = readCell(rows[j]);
+                if (cell == null)
+                    continue;
+
+                String key = TocBundle.getFileName(
+                                    TocBundle.getBlock(cell.gridCol),
+                                    TocBundle.getBlock(cell.gridRow));
+                Vector block = (Vector)blocks.get(key);
+                if (block == null)
+                {
+                    block = new Vector();
+                    blocks.put(key, block);
+                }
+                block.addElement(cell);
+            }
+        }
+
+        // write the bundles
+        File bundleDir = new File(sensorDir, TocBundle.DIR_NAME);
+        if (!bundleDir.isDirectory() && !bundleDir.mkdirs())
+            throw new IOException("unable to create " + bundleDir);
+        Enumeration keys = blocks.keys();
+        while (keys.hasMoreElements())
+        {
+            String key = (String)keys.nextElement();
+            write((Vector)blocks.get(key), new File(sensorDir, key));
+        }
+
+        // remove the bundles for blocks that no longer have inventory
+        File[] files = bundleDir.listFiles();
+        for (int i = 0; i < files.length; i++)
+        {
+            String key = TocBundle.DIR_NAME + "/" + files[i].getName();
+            if (!blocks.containsKey(key))
+                files[i].delete();
+        }
+
+        return blocks.size();
+    }
+
+    // helper method to read the binary TOC for a cell directory, converting
+    // the text TOC if the binary one is missing or out of date.  Returns
+    // null if the directory doesn't hold a TOC.
+    //----------------------------------------------------------------------
+    private Cell readCell(File cellDir) throws IOException
+    {
+        File textFile = new File(cellDir, "TOC");
+        File binFile = new File(cellDir, BinaryTOC.FILE_NAME);
+        File tempFile = null;
+        if (!binFile.exists()
+            || (textFile.exists()
+                && (binFile.lastModified() < textFile.lastModified())))
+        {
+            if (!textFile.exists())
+                return null;
+            tempFile = File.createTempFile("toc", ".bin");
+            binFile = tempFile;
+            TocConverter.convert(textFile, binFile);
+        }
+
+        Cell cell = new Cell();
+        try
+        {
+            cell.data = readFile(binFile);
+        }
+        finally
+        {
+            if (tempFile != null)
+                tempFile.delete();
+        }
+
+        // find the grid cell from the header of the TOC
+        BinaryTOC binary = new BinaryTOC(ByteBuffer.wrap(cell.data));
+        try
+        {
+            cell.gridCol = navModel.getColumnNumberFromString(
+                                                binary.getColumnString());
+            cell.gridRow = navModel.getRowNumberFromString(
+                                                binary.getRowString());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("invalid grid cell in " + cellDir);
+        }
+        return cell;
+    }
+
+    // helper method to read the contents of a file
+    //---------------------------------------------
+    private static byte[] readFile(File file) throws IOException
+    {
+        byte[] data = new byte[(int)file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            int size = 0;
+            while (size < data.length)
+            {
+                int count = in.read(data, size, data.length - size);
+                if (count < 0)
+                    throw new IOException("unexpected end of " + file);
+                size += count;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return data;
+    }
+
+    // helper method to write a bundle file for the cells of a block
+    //--------------------------------------------------------------
+    private static void write(Vector cells, File bundleFile)
+        throws IOException
+    {
+        // write to a temporary file so a reader never sees a partial bundle
+        File tempFile = new File(bundleFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try
+        {
+            int numCells = cells.size();
+            out.writeInt(TocBundle.MAGIC);
+            out.writeInt(TocBundle.VERSION);
+            out.writeInt(TocBundle.BLOCK_SIZE);
+            out.writeInt(numCells);
+
+            // offset table
+            int offset = 16 + numCells * 16;
+            for (int i = 0; i < numCells; i++)
+            {
+                Cell cell = (Cell)cells.elementAt(i);
+                out.writeInt(cell.gridCol);
+                out.writeInt(cell.gridRow);
+                out.writeInt(offset);
+                out.writeInt(cell.data.length);
+                offset += cell.data.length;
+            }
+
+            // binary TOC files
+            for (int i = 0; i < numCells; i++)
+                out.write(((Cell)cells.elementAt(i)).data);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        bundleFile.delete();
+        if (!tempFile.renameTo(bundleFile))
+        {
+            tempFile.delete();
+            throw new IOException("unable to rename " + tempFile);
+        }
+    }
+
+    // main routine for the tool
+    //--------------------------
+    public static void main(String[] args)
+    {
+        if (args.length < 2)
+        {
+            System.out.println("Usage: java TocBundleBuilder "
+                               + "navigationModelClass sensorDirectory...");
+            System.exit(1);
+        }
+
+        NavigationModel navModel = null;
+        try
+        {
+            navModel = (NavigationModel)Class.forName(args[0])
+                                    .getDeclaredConstructor().newInstance();
+        }
+        catch (Exception e)
+        {
+            System.out.println("Invalid navigation model " + args[0] + ": "
+                               + e);
+            System.exit(1);
+        }
+
+        TocBundleBuilder builder = new TocBundleBuilder(navModel);
+        int failed = 0;
+        for (int i = 1; i < args.length; i++)
+        {
+            try
+            {
+                int numBundles = builder.build(new File(args[i]));
+                System.out.println(args[i] + ": " + numBundles + " bundles");
+            }
+            catch (IOException e)
+            {
+                System.out.println("Error bundling " + args[i] + ": "
+                                   + e.getMessage());
+                failed++;
+            }
+        }
+        if (failed > 0)
+            System.exit(1);
+    }
+}
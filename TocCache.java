@@ -0,0 +1,156 @@
+// TocCache.java implements a cache of TOCs that have been read and then
+// scrolled out of the mosaic.  When the display returns to an area (or to a
+// sensor) recently viewed, the TOC is taken from the cache instead of being
+// read and parsed again.
+//
+// The cache is limited by the total number of scenes in the cached TOCs,
+// with the least recently used TOCs discarded first.  TOCs older than the
+// maximum age are discarded so changes to the inventory on the server are
+// picked up eventually.
+//
+//  Note: the cache is only used from the GUI thread.
+//--------------------------------------------------------------------------
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class TocCache
+{
+    class CacheEntry
+    {
+        TOC cell;       // cached TOC
+        long readTime;  // time the TOC was read (in milliseconds)
+    }
+
+    private LinkedHashMap cache; // cached TOCs in least recently used order
+    private int maxScenes;      // maximum number of scenes to cache
+    private long maxAge;        // maximum age of a cached TOC in milliseconds
+    private int numScenes;      // number of scenes currently cached
+    private int hits;           // number of TOCs found in the cache
+    private int misses;         // number of TOCs not found in the cache
+
+    // constructor for the TOC cache
+    //------------------------------
+    public TocCache(int maxScenes, int maxAgeSeconds)
+    {
+        cache = new LinkedHashMap(16, 0.75f, true);
+        this.maxScenes = maxScenes;
+        maxAge = maxAgeSeconds * 1000L;
+        numScenes = 0;
+    }
+
+    // method to build the key identifying a TOC for a sensor and cell
+    //----------------------------------------------------------------
+    static String makeKey(Sensor sensor, int gridCol, int gridRow)
+    {
+        return sensor.sensorName + "/" + gridCol + "/" + gridRow;
+    }
+
+    // method to set the limits on the cache contents
+    //-----------------------------------------------
+    public void setLimits(int maxScenes, int maxAgeSeconds)
+    {
+        this.maxScenes = maxScenes;
+        maxAge = maxAgeSeconds * 1000L;
+        trim();
+    }
+
+    // method to add a TOC that is no longer displayed to the cache.  Only
+    // valid TOCs that were read for a known sensor are cached.  The TOC
+    // should not be used by the caller after this.
+    //-------------------------------------------------------------------
+    public void put(TOC cell)
+    {
+        if ((cell.cacheKey == null) || !cell.valid || (maxScenes <= 0))
+        {
+            cell.cleanup();
+            return;
+        }
+
+        // the images for the scenes are not kept in the cache
+        cell.releaseImages();
+
+        CacheEntry entry = new CacheEntry();
+        entry.cell = cell;
+        entry.readTime = cell.readTime;
+        CacheEntry old = (CacheEntry)cache.put(cell.cacheKey, entry);
+        if (old != null)
+            numScenes -= old.cell.numImg;
+        numScenes += cell.numImg;
+        trim();
+    }
+
+    // method to take a TOC out of the cache.  Returns null if the TOC for
+    // the sensor and cell is not cached or is too old.
+    //--------------------------------------------------------------------
+    public TOC get(Sensor sensor, int gridCol, int gridRow)
+    {
+        CacheEntry entry = (CacheEntry)cache.remove(
+                                        makeKey(sensor, gridCol, gridRow));
+        if (entry == null)
+        {
+            misses++;
+            return null;
+        }
+        numScenes -= entry.cell.numImg;
+
+        if (System.currentTimeMillis() - entry.readTime > maxAge)
+        {
+            // too old, so read it again
+            entry.cell.cleanup();
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry.cell;
+    }
+
+    // method to check whether the TOC for the sensor and cell is in the
+    // cache without changing the order the TOCs are discarded in
+    //-------------------------------------------------------------------
+    public boolean contains(Sensor sensor, int gridCol, int gridRow)
+    {
+        return cache.containsKey(makeKey(sensor, gridCol, gridRow));
+    }
+
+    // method to return whether the cache keeps any TOCs
+    //--------------------------------------------------
+    public boolean isEnabled()
+    {
+        return maxScenes > 0;
+    }
+
+    // method to empty the cache
+    //--------------------------
+    public void clear()
+    {
+        Iterator entries = cache.values().iterator();
+        while (entries.hasNext())
+            ((CacheEntry)entries.next()).cell.cleanup();
+        cache.clear();
+        numScenes = 0;
+    }
+
+    // method to return a summary of the cache state for debug output
+    //---------------------------------------------------------------
+    public String getStatistics()
+    {
+        return "TOC cache: " + cache.size() + " cells, " + numScenes
+            + " scenes, " + hits + " hits, " + misses + " misses";
+    }
+
+    // helper method to discard the least recently used TOCs until the
+    // cache is within its scene limit
+    //----------------------------------------------------------------
+    private void trim()
+    {
+        Iterator entries = cache.values().iterator();
+        while ((numScenes > maxScenes) && entries.hasNext())
+        {
+            CacheEntry entry = (CacheEntry)entries.next();
+            entries.remove();
+            numScenes -= entry.cell.numImg;
+            entry.cell.cleanup();
+        }
+    }
+}
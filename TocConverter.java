@@ -0,0 +1,257 @@
+// TocConverter.java is a command line tool that converts the text TOC files
+// in an inventory tree (i.e. <sensor>/pNNN/rNNN/TOC) into the binary TOC
+// format read by the BinaryTOC class.  The binary file is written next to
+// the text file as TOC.bin.  It is not part of the applet.
+//
+// Usage: java TocConverter [-f] directory...
+//    -f  convert all files, even if the binary file is newer than the text
+//---------------------------------------------------------------------------
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+public class TocConverter
+{
+    private boolean force;      // convert even if the binary file is current
+    private int converted;      // number of files converted
+    private int skipped;        // number of files already current
+    private int failed;         // number of files that could not be converted
+
+    // method to convert all the TOC files found under a directory
+    //------------------------------------------------------------
+    private void convertTree(File dir)
+    {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+
+        for (int i = 0; i < files.length; i++)
+        {
+            File file = files[i];
+            if (file.isDirectory())
+                convertTree(file);
+            else if (file.getName().equals("TOC"))
+            {
+                File binFile = new File(dir, BinaryTOC.FILE_NAME);
+                if (!force && binFile.exists()
+                    && (binFile.lastModified() >= file.lastModified()))
+                {
+                    skipped++;
+                    continue;
+                }
+                try
+                {
+                    convert(file, binFile);
+                    converted++;
+                }
+                catch (IOException e)
+                {
+                    System.out.println("Error converting " + file + ": "
+                                       + e.getMessage());
+                    binFile.delete();
+                    failed++;
+                }
+            }
+        }
+    }
+
+    // method to convert a single text TOC file to a binary TOC file
+    //--------------------------------------------------------------
+    public static void convert(File textFile, File binFile) throws IOException
+    {
+        Vector lines = new Vector();
+        String header;
+
+        // read the text file
+        BufferedReader data = new BufferedReader(new FileReader(textFile));
+        try
+        {
+            header = data.readLine();
+            if (header == null)
+                throw new IOException("empty TOC file");
+            String line;
+            while ((line = data.readLine()) != null)
+                lines.addElement(line);
+        }
+        finally
+        {
+            data.close();
+        }
+
+        // parse the header line
+        StringTokenizer st = new StringTokenizer(header, ",");
+        if (st.countTokens() < 6)
+            throw new IOException("invalid header line");
+        String colString = st.nextToken();
+        String rowString = st.nextToken();
+        int projCode;
+        int hasLines;
+        int hasMetrics;
+        int numImg;
+        try
+        {
+            projCode = Integer.parseInt(st.nextToken());
+            hasLines = Integer.parseInt(st.nextToken());
+            hasMetrics = Integer.parseInt(st.nextToken());
+            numImg = Integer.parseInt(st.nextToken());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("invalid header line");
+        }
+        if (numImg > lines.size())
+            throw new IOException("missing scene lines");
+
+        // split the scene lines into fields the same way the text reader
+        // does
+        String[][] fields = new String[numImg][];
+        int numColumns = 0;
+        for (int i = 0; i < numImg; i++)
+        {
+            st = new StringTokenizer((String)lines.elementAt(i), ",");
+            fields[i] = new String[st.countTokens()];
+            for (int j = 0; j < fields[i].length; j++)
+                fields[i][j] = st.nextToken();
+            if (fields[i].length > numColumns)
+                numColumns = fields[i].length;
+        }
+
+        // a column can be stored as integers if every value in it is an
+        // integer that converts back to the same text
+        int[] columnTypes = new int[numColumns];
+        for (int col = 0; col < numColumns; col++)
+        {
+            columnTypes[col] = BinaryTOC.INT_COLUMN;
+            for (int i = 0; i < numImg; i++)
+            {
+                if ((col < fields[i].length) && !isInteger(fields[i][col]))
+                {
+                    columnTypes[col] = BinaryTOC.STRING_COLUMN;
+                    break;
+                }
+            }
+        }
+
+        // build the string table
+        Vector strings = new Vector();
+        Hashtable stringIndex = new Hashtable();
+        int colIndex = addString(colString, strings, stringIndex);
+        int rowIndex = addString(rowString, strings, stringIndex);
+        int[][] values = new int[numColumns][numImg];
+        for (int col = 0; col < numColumns; col++)
+        {
+            for (int i = 0; i < numImg; i++)
+            {
+                if (col >= fields[i].length)
+                    continue;
+                if (columnTypes[col] == BinaryTOC.INT_COLUMN)
+                    values[col][i] = Integer.parseInt(fields[i][col]);
+                else
+                {
+                    values[col][i] = addString(fields[i][col], strings,
+                                               stringIndex);
+                }
+            }
+        }
+
+        // write the binary file
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                                    new FileOutputStream(binFile)));
+        try
+        {
+            out.writeInt(BinaryTOC.MAGIC);
+            out.writeInt(BinaryTOC.VERSION);
+            out.writeInt(colIndex);
+            out.writeInt(rowIndex);
+            out.writeInt(projCode);
+            out.writeInt(hasLines);
+            out.writeInt(hasMetrics);
+            out.writeInt(numImg);
+            out.writeInt(numColumns);
+            for (int col = 0; col < numColumns; col++)
+                out.writeInt(columnTypes[col]);
+            for (int i = 0; i < numImg; i++)
+                out.writeInt(fields[i].length);
+            for (int col = 0; col < numColumns; col++)
+            {
+                for (int i = 0; i < numImg; i++)
+                    out.writeInt(values[col][i]);
+            }
+            out.writeInt(strings.size());
+            for (int i = 0; i < strings.size(); i++)
+            {
+                byte[] bytes = ((String)strings.elementAt(i)).getBytes("UTF-8");
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    // helper method to check whether a field can be stored as an integer
+    //--------------------------------------------------------------------
+    private static boolean isInteger(String value)
+    {
+        try
+        {
+            return Integer.toString(Integer.parseInt(value)).equals(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+    // helper method to add a string to the string table, returning its index
+    //------------------------------------------------------------------------
+    private static int addString(String value, Vector strings,
+                                 Hashtable stringIndex)
+    {
+        Integer index = (Integer)stringIndex.get(value);
+        if (index == null)
+        {
+            index = Integer.valueOf(strings.size());
+            strings.addElement(value);
+            stringIndex.put(value, index);
+        }
+        return index.intValue();
+    }
+
+    public static void main(String[] args)
+    {
+        TocConverter converter = new TocConverter();
+        int numDirs = 0;
+
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("-f"))
+                converter.force = true;
+            else
+            {
+                converter.convertTree(new File(args[i]));
+                numDirs++;
+            }
+        }
+
+        if (numDirs == 0)
+        {
+            System.out.println("Usage: java TocConverter [-f] directory...");
+            System.exit(1);
+        }
+
+        System.out.println("Converted " + converter.converted + ", skipped "
+            + converter.skipped + ", failed " + converter.failed);
+        if (converter.failed > 0)
+            System.exit(1);
+    }
+}
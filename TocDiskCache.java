@@ -0,0 +1,384 @@
+// TocDiskCache.java implements a cache of the inventory (TOC) files in a
+// directory on the local disk so the files do not need to be downloaded
+// again in later sessions.  It is only enabled when the applet has been
+// granted the privileges to write to the local disk.
+//
+// The first time a cached file is used in a session, the cached copy is
+// returned right away and the file is checked with the server in the
+// background using a conditional request (If-Modified-Since/If-None-Match).
+// If the server has a newer version, it replaces the cached copy and is
+// used the next time the file is read.  After the user asks for the display
+// to be refreshed, cached files are checked with the server before they
+// are used.
+//
+// The files are kept in a DiskFileStore, which limits the size of the cache
+// by deleting the least recently used files, and writes each file through a
+// uniquely named temporary file since the TOC fetch threads, the prefetch
+// thread and the LandsatCombined read threads can all store the same file
+// at once.  The validators for each file are kept in a companion file.
+// Files read from file: URLs are never cached.
+//--------------------------------------------------------------------------
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Hashtable;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+public class TocDiskCache
+{
+    private static TocDiskCache cache; // the cache (null if disabled)
+
+    // suffix for the file holding the validators for a cached file
+    private static final String META_SUFFIX = ".meta";
+
+    private DiskFileStore files;// the cached files
+    private long forcedAfter;   // cached files not checked with the server
+                                // since this time are checked before use
+    private Hashtable checked;  // time each cached file was last checked
+                                // with the server in this session (by path)
+    private Hashtable pending;  // paths with a background check queued
+    private ExecutorService checker; // thread for the background checks
+    private int hits;           // number of files read from the cache
+    private int misses;         // number of files downloaded
+    private int updates;        // number of cached files replaced
+
+    // method to enable the cache.  The cache is left disabled if the
+    // directory cannot be created.
+    //----------------------------------------------------------------
+    public static synchronized void enable(File directory, long maxBytes)
+    {
+        if (cache != null)
+            return;
+        try
+        {
+            if (!directory.isDirectory() && !directory.mkdirs())
+            {
+                System.out.println("Unable to create TOC cache directory "
+                                   + directory);
+                return;
+            }
+            cache = new TocDiskCache(directory, maxBytes);
+        }
+        catch (SecurityException e)
+        {
+            System.out.println("Exception:  "+e.getMessage());
+        }
+    }
+
+    // method to return the cache (null if it is not enabled)
+    //-------------------------------------------------------
+    public static TocDiskCache getCache()
+    {
+        return cache;
+    }
+
+    // method to open a TOC file URL, using the cache if it is enabled.
+    // Throws an IOException if the file cannot be read (i.e. it does not
+    // exist).
+    //-------------------------------------------------------------------
+    public static InputStream openStream(URL url) throws IOException
+    {
+        TocDiskCache c = cache;
+        if ((c == null) || url.getProtocol().equals("file"))
+            return url.openStream();
+        return new ByteArrayInputStream(c.read(url));
+    }
+
+    // private constructor for the cache
+    //----------------------------------
+    private TocDiskCache(File root, long maxBytes)
+    {
+        files = new DiskFileStore(root, maxBytes, META_SUFFIX);
+        checked = new Hashtable();
+        pending = new Hashtable();
+        forcedAfter = 0;
+
+        checker = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "TOC Cache Check Thread");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+    }
+
+    // method to read the contents of a file, from the cache if possible
+    //------------------------------------------------------------------
+    private byte[] read(URL url) throws IOException
+    {
+        String path = DiskFileStore.getPath(url);
+        File meta = files.getCompanionFile(path);
+
+        // a cached copy that can't be read is downloaded again
+        byte[] data = files.read(path);
+        if (data == null)
+        {
+            data = download(url, path, null);
+            synchronized (this)
+            {
+                misses++;
+                checked.put(path, Long.valueOf(System.currentTimeMillis()));
+            }
+            return data;
+        }
+
+        boolean checkNow;
+        boolean checkLater;
+        synchronized (this)
+        {
+            hits++;
+            Long lastCheck = (Long)checked.get(path);
+            checkNow = (forcedAfter > 0) && ((lastCheck == null)
+                        || (lastCheck.longValue() < forcedAfter));
+            checkLater = !checkNow && (lastCheck == null)
+                        && !pending.containsKey(path);
+            if (checkLater)
+                pending.put(path, path);
+        }
+
+        if (checkNow)
+        {
+            // the user asked for fresh data, so check with the server before
+            // using the cached copy
+            try
+            {
+                byte[] newData = revalidate(url, path, meta);
+                if (newData != null)
+                    data = newData;
+            }
+            catch (FileNotFoundException e)
+            {
+                throw e;
+            }
+            catch (IOException e)
+            {
+                // the server could not be reached, so use the cached copy
+            }
+        }
+        else if (checkLater)
+            checker.execute(new Check(url, path, meta));
+
+        return data;
+    }
+
+    // class to check a cached file with the server in the background
+    //---------------------------------------------------------------
+    private class Check implements Runnable
+    {
+        private URL url;
+        private String path;
+        private File meta;
+
+        Check(URL url, String path, File meta)
+        {
+            this.url = url;
+            this.path = path;
+            this.meta = meta;
+        }
+
+        public void run()
+        {
+            try
+            {
+                revalidate(url, path, meta);
+            }
+            catch (IOException e)
+            {
+                // the server could not be reached, so keep the cached copy
+                // and try again next session
+            }
+            finally
+            {
+                synchronized (TocDiskCache.this)
+                {
+                    pending.remove(path);
+                }
+            }
+        }
+    }
+
+    // helper method to check a cached file with the server.  Returns the
+    // new contents if the file changed, or null if the cached copy is
+    // current.  If the file no longer exists on the server, the cached copy
+    // is removed and an IOException is thrown.
+    //----------------------------------------------------------------------
+    private byte[] revalidate(URL url, String path, File meta)
+        throws IOException
+    {
+        Properties validators = new Properties();
+        try
+        {
+            FileInputStream in = new FileInputStream(meta);
+            try
+            {
+                validators.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            // no validators, so the file will be downloaded again
+        }
+
+        byte[] data;
+        try
+        {
+            data = download(url, path, validators);
+        }
+        catch (IOException e)
+        {
+            // a missing file throws a FileNotFoundException, in which case
+            // the cached copy is no longer valid
+            if (e instanceof FileNotFoundException)
+                files.remove(path);
+            throw e;
+        }
+
+        synchronized (this)
+        {
+            checked.put(path, Long.valueOf(System.currentTimeMillis()));
+            if (data != null)
+                updates++;
+        }
+        return data;
+    }
+
+    // helper method to download a file and store it in the cache.  If
+    // validators are passed in, a conditional request is made and null is
+    // returned if the server says the cached copy is current.
+    //---------------------------------------------------------------------
+    private byte[] download(URL url, String path, Properties validators)
+        throws IOException
+    {
+        URLConnection conn = url.openConnection();
+        if (validators != null)
+        {
+            // don't let any cache in the Java plug-in answer the request
+            conn.setUseCaches(false);
+            String lastModified = validators.getProperty("Last-Modified");
+            if (lastModified != null)
+                conn.setRequestProperty("If-Modified-Since", lastModified);
+            String etag = validators.getProperty("ETag");
+            if (etag != null)
+                conn.setRequestProperty("If-None-Match", etag);
+        }
+
+        // the cached copy is current if the server says it isn't modified
+        if ((validators != null) && (conn instanceof HttpURLConnection)
+            && (((HttpURLConnection)conn).getResponseCode()
+                == HttpURLConnection.HTTP_NOT_MODIFIED))
+        {
+            ((HttpURLConnection)conn).disconnect();
+            return null;
+        }
+
+        InputStream is = conn.getInputStream();
+        try
+        {
+            // read the contents
+            byte[] data = new byte[(conn.getContentLength() > 0)
+                                   ? conn.getContentLength() : 16384];
+            int size = 0;
+            while (true)
+            {
+                if (size == data.length)
+                {
+                    // only grow the buffer if there is more to read, so a
+                    // download of the content length isn't copied
+                    int next = is.read();
+                    if (next < 0)
+                        break;
+                    byte[] temp = new byte[data.length * 2];
+                    System.arraycopy(data, 0, temp, 0, size);
+                    data = temp;
+                    data[size++] = (byte)next;
+                }
+                int count = is.read(data, size, data.length - size);
+                if (count < 0)
+                    break;
+                size += count;
+            }
+            if (size != data.length)
+            {
+                byte[] temp = new byte[size];
+                System.arraycopy(data, 0, temp, 0, size);
+                data = temp;
+            }
+
+            // save the file and the validators for it
+            Properties newValidators = new Properties();
+            String lastModified = conn.getHeaderField("Last-Modified");
+            if (lastModified != null)
+                newValidators.setProperty("Last-Modified", lastModified);
+            String etag = conn.getHeaderField("ETag");
+            if (etag != null)
+                newValidators.setProperty("ETag", etag);
+            store(path, data, newValidators);
+
+            return data;
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    // helper method to write a file and its validators to the cache.  Errors
+    // writing the cache are reported but otherwise ignored.
+    //-----------------------------------------------------------------------
+    private void store(String path, byte[] data, Properties validators)
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            validators.store(out, null);
+            files.store(path, data, out.toByteArray());
+        }
+        catch (IOException e)
+        {
+            System.out.println("Exception:  "+e.getMessage());
+        }
+    }
+
+    // method to flag that cached files should be checked with the server
+    // before they are used (i.e. when the user asks for the display to be
+    // refreshed)
+    //-------------------------------------------------------------------
+    public synchronized void forceRevalidation()
+    {
+        forcedAfter = System.currentTimeMillis();
+    }
+
+    // method to delete all the files in the cache
+    //--------------------------------------------
+    public synchronized void clear()
+    {
+        files.clear();
+        checked.clear();
+    }
+
+    // method to return a description of the cache contents for display
+    //------------------------------------------------------------------
+    public synchronized String getDescription()
+    {
+        return files.getDescription() + "\n"
+            + "This session: " + hits + " read from the cache, " + misses
+            + " downloaded, " + updates + " updated";
+    }
+}
@@ -0,0 +1,24 @@
+// TocFields.java defines the interface for stepping through the fields of a
+// single scene entry in a TOC file.  It allows the Metadata class to decode
+// a scene the same way whether it came from a text or a binary TOC file.
+//---------------------------------------------------------------------------
+
+interface TocFields
+{
+    // method to return whether there are more fields for the scene
+    public boolean hasMoreFields();
+
+    // method to return the next field as an integer.  Throws a
+    // NumberFormatException if the field is not a number and a
+    // NoSuchElementException if there are no more fields.
+    public int nextInt();
+
+    // method to return the next field as a string.  Throws a
+    // NoSuchElementException if there are no more fields.
+    public String nextString();
+
+    // method to return the value of the first hex digit of the next field
+    // (used for the quality values).  Throws a NoSuchElementException if
+    // there are no more fields.
+    public int nextHexDigit();
+}
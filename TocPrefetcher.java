@@ -0,0 +1,174 @@
+// TocPrefetcher.java implements a background thread that reads the TOC
+// files for the cells just beyond the edge of the mosaic in the direction
+// the user has been scrolling.  The TOCs read are handed back to the
+// MosaicData on the GUI thread so they can be placed in the TOC cache, where
+// the next scroll in the same direction finds them instead of waiting for
+// them to be read.
+//
+// The prefetch thread runs at a low priority and waits to start reading a
+// TOC while TOC files or images for the display are loading.  Prefetched
+// TOCs that have not been handed back are discarded when the prefetch is
+// cancelled (for example when the sensor changes).
+//--------------------------------------------------------------------------
+import java.util.Vector;
+
+class TocPrefetcher implements Runnable
+{
+    private MosaicData md;          // mosaic data to yield to
+    private imgViewer applet;
+    private Thread prefetchThread;  // thread for reading the TOC files
+    private Sensor sensor;          // sensor the cells are for
+    private Vector pending;         // grid cells (int[] {col, row}) waiting
+                                    // to be read
+    private Vector completed;       // TOCs read and not yet handed back
+    private int generation;         // incremented when the prefetch is
+                                    // cancelled so work in progress is
+                                    // discarded
+    private boolean killThread;     // flag to indicate the thread should
+                                    // be killed
+
+    // constructor
+    //------------
+    public TocPrefetcher(imgViewer applet, MosaicData md)
+    {
+        this.applet = applet;
+        this.md = md;
+        pending = new Vector();
+        completed = new Vector();
+
+        prefetchThread = new Thread(this, "TOC Prefetch Thread");
+        prefetchThread.setDaemon(true);
+        prefetchThread.setPriority(Thread.MIN_PRIORITY);
+        prefetchThread.start();
+    }
+
+    // method to request the TOCs for a list of grid cells be read.  The
+    // cells replace any that have not been started yet.  A request for a
+    // different sensor cancels any outstanding work first.
+    //---------------------------------------------------------------------
+    public synchronized void prefetch(Sensor sensor, Vector cells)
+    {
+        if (sensor != this.sensor)
+        {
+            cancel();
+            this.sensor = sensor;
+        }
+        pending = cells;
+        notify();
+    }
+
+    // method to cancel any outstanding prefetch, discarding the TOCs that
+    // have not been handed back yet
+    //-------------------------------------------------------------------
+    public synchronized void cancel()
+    {
+        generation++;
+        pending = new Vector();
+        for (int i = 0; i < completed.size(); i++)
+            ((TOC)completed.elementAt(i)).cleanup();
+        completed.removeAllElements();
+    }
+
+    // method to take the TOCs that have been read since the last call.
+    // Called from the GUI thread.
+    //------------------------------------------------------------------
+    public synchronized Vector takeCompleted()
+    {
+        Vector cells = completed;
+        completed = new Vector();
+        return cells;
+    }
+
+    // method called when a TOC or image load for the display finishes, to
+    // wake the prefetch thread if it is waiting for the load
+    //--------------------------------------------------------------------
+    public synchronized void foregroundLoadDone()
+    {
+        notify();
+    }
+
+    // method to stop the prefetch thread when the applet is going out of
+    // scope
+    //--------------------------------------------------------------------
+    public synchronized void killThread()
+    {
+        cancel();
+        killThread = true;
+        notify();
+    }
+
+    // main method for the prefetch thread
+    //------------------------------------
+    public void run()
+    {
+        while (true)
+        {
+            int[] gridCell;
+            Sensor readSensor;
+            int readGeneration;
+
+            // wait for a cell to read
+            synchronized (this)
+            {
+                while (!killThread && pending.isEmpty())
+                {
+                    try {wait();}
+                    catch (InterruptedException e) {}
+                }
+                if (killThread)
+                    return;
+
+                gridCell = (int[])pending.remove(0);
+                readSensor = sensor;
+                readGeneration = generation;
+            }
+
+            // don't compete with the loads for the display
+            if (!waitForForegroundLoads(readGeneration))
+                continue;
+
+            if (applet.verboseOutput)
+            {
+                System.out.println("Prefetching TOC at " + gridCell[0] + " "
+                                   + gridCell[1]);
+            }
+
+            TOC cell = new TOC(CodeBase.getGlovisURL(), gridCell[0],
+                               gridCell[1]);
+            readSensor.readTOC(cell);
+            cell.cacheKey = TocCache.makeKey(readSensor, cell.gridCol,
+                                             cell.gridRow);
+            cell.readTime = System.currentTimeMillis();
+
+            // keep the TOC only if the prefetch wasn't cancelled while it
+            // was being read
+            synchronized (this)
+            {
+                if ((generation == readGeneration) && cell.valid)
+                    completed.addElement(cell);
+                else
+                    cell.cleanup();
+            }
+        }
+    }
+
+    // helper method to wait until the mosaic is not loading TOCs or images.
+    // The loader threads call foregroundLoadDone after clearing their
+    // loading flags, and the flags are checked while holding the lock, so
+    // the end of a load can't be missed.  Returns false if the prefetch was
+    // cancelled while waiting.
+    //----------------------------------------------------------------------
+    private synchronized boolean waitForForegroundLoads(int readGeneration)
+    {
+        while (true)
+        {
+            if (killThread || (generation != readGeneration))
+                return false;
+            if (!md.isForegroundLoadActive())
+                return true;
+
+            try {wait();}
+            catch (InterruptedException e) {}
+        }
+    }
+}
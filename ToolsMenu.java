@@ -11,6 +11,7 @@ import javax.swing.event.MenuListener;
 import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.KeyStroke;
 import javax.swing.ToolTipManager;
 
@@ -90,6 +91,24 @@ public class ToolsMenu extends JMenu implements ActionListener, MenuListener
         item.addActionListener(this);
         add(item);
 
+        // add an item to look at and clear the inventory cache on the local
+        // disk if it is enabled
+        if (TocDiskCache.getCache() != null)
+        {
+            item = new JMenuItem("Inventory Cache...", KeyEvent.VK_I);
+            item.addActionListener(this);
+            add(item);
+        }
+
+        // add an item to look at and clear the browse image cache on the
+        // local disk if it is enabled
+        if (BrowseDiskCache.getCache() != null)
+        {
+            item = new JMenuItem("Image Cache...", KeyEvent.VK_A);
+            item.addActionListener(this);
+            add(item);
+        }
+
         // add the scene list selection
         item = new JMenuItem("Scene List...", KeyEvent.VK_L);
         item.addActionListener(this);
@@ -192,6 +211,42 @@ public class ToolsMenu extends JMenu implements ActionListener, MenuListener
     public void menuDeselected(MenuEvent e) {}
     public void menuCanceled(MenuEvent e) {}
 
+    // method to show the state of the inventory cache and allow the user
+    // to clear it
+    //---------------------------------------------------------------------
+    private void showInventoryCache()
+    {
+        TocDiskCache cache = TocDiskCache.getCache();
+        if (cache == null)
+            return;
+
+        Object[] options = {"Clear Cache", "Close"};
+        int choice = JOptionPane.showOptionDialog(applet.getDialogContainer(),
+                cache.getDescription(), "Inventory Cache",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE,
+                null, options, options[1]);
+        if (choice == 0)
+            cache.clear();
+    }
+
+    // method to show the state of the browse image cache and allow the user
+    // to clear it
+    //-----------------------------------------------------------------------
+    private void showImageCache()
+    {
+        BrowseDiskCache cache = BrowseDiskCache.getCache();
+        if (cache == null)
+            return;
+
+        Object[] options = {"Clear Cache", "Close"};
+        int choice = JOptionPane.showOptionDialog(applet.getDialogContainer(),
+                cache.getDescription(), "Image Cache",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE,
+                null, options, options[1]);
+        if (choice == 0)
+            cache.clear();
+    }
+
     // event handler for the menu selections
     //--------------------------------------
     public void actionPerformed(ActionEvent event)
@@ -264,6 +319,14 @@ public class ToolsMenu extends JMenu implements ActionListener, MenuListener
         {
             applet.md.refreshDisplay();
         }
+        else if (command.equals("Inventory Cache..."))
+        {
+            showInventoryCache();
+        }
+        else if (command.equals("Image Cache..."))
+        {
+            showImageCache();
+        }
         else if (command.equals("User Defined Area..."))
         {
             applet.userDefinedAreaDialog.setLocation(loc);
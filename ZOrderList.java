@@ -86,6 +86,32 @@ public class ZOrderList
         return list;
     }
 
+    // method to copy the scene references in z-order into an array kept by
+    // the caller, so a snapshot can be taken repeatedly without allocating
+    // a new array each time.  Returns the array passed in, or a larger one
+    // if it was too small.  The entries after the last scene are null.
+    //---------------------------------------------------------------------
+    public Metadata[] getSnapshot(Metadata[] list)
+    {
+        if ((list == null) || (list.length < numItems + 1))
+            list = new Metadata[numItems + 16];
+
+        Node currentNode = head;
+        int i = 0;
+        while (currentNode != null)
+        {
+            list[i] = currentNode.scene;
+            i++;
+            currentNode = currentNode.next;
+        }
+        while ((i < list.length) && (list[i] != null))
+        {
+            list[i] = null;
+            i++;
+        }
+        return list;
+    }
+
     // method to set the z-Order so that only a single scene is tracked for
     // each grid cell
     //---------------------------------------------------------------------
@@ -34,6 +34,7 @@ import java.net.URL;
 import java.net.MalformedURLException;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.InputStream;
 import java.util.Observer;
 import java.util.Observable;
@@ -55,6 +56,8 @@ import javax.swing.JViewport;
 import javax.swing.KeyStroke;
 import javax.swing.RepaintManager;
 import javax.swing.ToolTipManager;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 public class imgViewer extends JApplet implements ActionListener, MouseListener,
     FocusListener, Observer, Printable
@@ -228,6 +231,39 @@ public class imgViewer extends JApplet implements ActionListener, MouseListener,
             // granted the needed privileges?
         }
 
+        // if the applet can write to the local disk, keep a copy of the
+        // inventory and browse image files there for later sessions
+        if (grantedPrivileges)
+        {
+            try
+            {
+                int cacheSize = Integer.parseInt(
+                            gvProp.getProperty("tocdiskcachemb", "50"));
+                if (cacheSize > 0)
+                {
+                    File cacheDir = new File(System.getProperty("user.home"),
+                            ".glovis" + File.separator + "toccache");
+                    TocDiskCache.enable(cacheDir, cacheSize * 1024L * 1024L);
+                }
+            }
+            catch (NumberFormatException e) {}
+
+            // also keep a copy of the browse image files
+            try
+            {
+                int cacheSize = Integer.parseInt(
+                            gvProp.getProperty("imagediskcachemb", "200"));
+                if (cacheSize > 0)
+                {
+                    File cacheDir = new File(System.getProperty("user.home"),
+                            ".glovis" + File.separator + "browsecache");
+                    BrowseDiskCache.enable(cacheDir,
+                                           cacheSize * 1024L * 1024L);
+                }
+            }
+            catch (NumberFormatException e) {}
+        }
+
         // get the current sensor
         tempSensor = getParameter("sensor").toUpperCase();
         // recognize either "ASTERVNIR" or "ASTERL2v" for ASTER
@@ -388,11 +424,75 @@ public class imgViewer extends JApplet implements ActionListener, MouseListener,
         // cache a copy of the mosaic data reference
         md = imgArea.md;
 
+        // let the image loader know when the visible part of the display
+        // changes so it can load the images the user is looking at first
+        imgScroll.getViewport().addChangeListener(new ChangeListener()
+        {
+            public void stateChanged(ChangeEvent e)
+            {
+                md.imageLoader.updateVisibleArea();
+                md.checkImageRegion();
+                imgArea.renderQuality.interaction();
+            }
+        });
+
         // add workers to monitor to the progress indicator
         statusBar.progress.addWorker(md);
         statusBar.progress.addWorker(md.imageLoader);
         statusBar.progress.addWorker(md.mapLayers);
 
+        // set how many TOC files can be fetched at once
+        try
+        {
+            md.setTocLoaderCount(
+                    Integer.parseInt(gvProp.getProperty("tocloaders", "4")));
+        }
+        catch (NumberFormatException e) {}
+
+        // set the limits on the TOC files kept after scrolling away
+        try
+        {
+            md.setTocCacheLimits(
+                Integer.parseInt(gvProp.getProperty("toccachescenes","50000")),
+                Integer.parseInt(gvProp.getProperty("toccacheage", "900")));
+        }
+        catch (NumberFormatException e) {}
+
+        // set the size of the cache of browse images kept in memory
+        try
+        {
+            md.imageLoader.getImageCache().setMaxBytes(1024L * 1024L
+                * Integer.parseInt(gvProp.getProperty("imagecachemb", "48")));
+        }
+        catch (NumberFormatException e) {}
+
+        // set the bounds for the number of browse images loaded at once
+        try
+        {
+            md.imageLoader.setConcurrencyLimits(
+                Integer.parseInt(gvProp.getProperty("imagefetchmin", "2")),
+                Integer.parseInt(gvProp.getProperty("imagefetchmax", "9")));
+        }
+        catch (NumberFormatException e) {}
+
+        // set how many dates around the selected date have their images
+        // prefetched
+        try
+        {
+            md.setDatePrefetchCount(
+                Integer.parseInt(gvProp.getProperty("prefetchdates", "4")));
+        }
+        catch (NumberFormatException e) {}
+
+        // set how long a frame can take to draw before the display is drawn
+        // at reduced quality
+        try
+        {
+            imgArea.renderQuality.setFrameBudget(
+                Integer.parseInt(gvProp.getProperty("framebudgetms", "50")));
+        }
+        catch (NumberFormatException e) {}
+
         // create the area of interest dialog box
         userDefinedAreaDialog = new UserDefinedAreaDialog(getDialogParent(),
                                     this,md);